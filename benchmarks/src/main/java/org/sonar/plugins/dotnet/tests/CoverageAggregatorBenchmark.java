@@ -0,0 +1,99 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoverageAggregatorBenchmark {
+
+  @Param("8")
+  public int reports;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  @Param("100")
+  public int files;
+
+  @Param("200")
+  public int lines;
+
+  @Param("10")
+  public int hits;
+
+  private File directory;
+  private CoverageAggregator coverageAggregator;
+
+  @Setup(Level.Trial)
+  public void generateReports() throws IOException {
+    directory = Files.createTempDir();
+    ReportGenerator generator = new ReportGenerator(directory, files, lines, hits);
+
+    List<String> reportPaths = Lists.newArrayList();
+    for (int i = 0; i < reports; i++) {
+      reportPaths.add(generator.openCover("report" + i + ".xml").getAbsolutePath());
+    }
+
+    Settings settings = new Settings();
+    settings.setProperty("opencover", Joiner.on(',').join(reportPaths));
+    settings.setProperty(ParallelParsing.THREADS_PROPERTY_KEY, Integer.toString(threads));
+
+    coverageAggregator = new CoverageAggregator(new CoverageConfiguration("cs", "ncover3", "opencover", "dotcover", "visualstudio"), settings);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteReports() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Benchmark
+  public Coverage aggregate() {
+    return coverageAggregator.aggregate(new Coverage());
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoverageParsersBenchmark {
+
+  @Param("100")
+  public int files;
+
+  @Param("200")
+  public int lines;
+
+  @Param("10")
+  public int hits;
+
+  private File directory;
+  private File ncover3Report;
+  private File openCoverReport;
+  private File visualStudioCoverageXmlReport;
+  private File dotCoverReport;
+
+  @Setup(Level.Trial)
+  public void generateReports() throws IOException {
+    directory = Files.createTempDir();
+    ReportGenerator generator = new ReportGenerator(directory, files, lines, hits);
+    ncover3Report = generator.ncover3("report.nccov");
+    openCoverReport = generator.openCover("report.xml");
+    visualStudioCoverageXmlReport = generator.visualStudioCoverageXml("report.coveragexml");
+    dotCoverReport = generator.dotCover("report");
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteReports() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Benchmark
+  public Coverage ncover3() {
+    return parse(new NCover3ReportParser(), ncover3Report);
+  }
+
+  @Benchmark
+  public Coverage openCover() {
+    return parse(new OpenCoverReportParser(), openCoverReport);
+  }
+
+  @Benchmark
+  public Coverage visualStudioCoverageXml() {
+    return parse(new VisualStudioCoverageXmlReportParser(), visualStudioCoverageXmlReport);
+  }
+
+  @Benchmark
+  public Coverage dotCover() {
+    return parse(new DotCoverReportsAggregator(new DotCoverReportParser()), dotCoverReport);
+  }
+
+  private static Coverage parse(CoverageParser parser, File report) {
+    Coverage coverage = new Coverage();
+    parser.parse(report, coverage);
+    return coverage;
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.AbstractLanguage;
+import org.sonar.api.resources.Language;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the import of already parsed coverage into a stubbed sensor context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoverageReportImportSensorBenchmark {
+
+  @Param("100")
+  public int files;
+
+  @Param("200")
+  public int lines;
+
+  @Param("10")
+  public int hits;
+
+  private Coverage coverage;
+  private CoverageReportImportSensor sensor;
+  private SensorContext context;
+  private FileProvider fileProvider;
+
+  @Setup(Level.Trial)
+  public void parseReport() throws IOException {
+    File directory = Files.createTempDir();
+    try {
+      File report = new ReportGenerator(directory, files, lines, hits).openCover("report.xml");
+      coverage = new Coverage();
+      new OpenCoverReportParser().parse(report, coverage);
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "ncover3", "opencover", "dotcover", "visualstudio");
+    sensor = new CoverageReportImportSensor(coverageConf, new CoverageAggregator(coverageConf, new Settings()));
+    context = stubSensorContext();
+    fileProvider = new StubFileProvider(context);
+  }
+
+  @TearDown(Level.Trial)
+  public void release() {
+    coverage = null;
+  }
+
+  @Benchmark
+  public void analyze() {
+    sensor.analyze(context, fileProvider, coverage);
+  }
+
+  private static SensorContext stubSensorContext() {
+    return (SensorContext) Proxy.newProxyInstance(
+      SensorContext.class.getClassLoader(),
+      new Class<?>[] {SensorContext.class},
+      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          Class<?> returnType = method.getReturnType();
+          if (returnType == boolean.class) {
+            return false;
+          } else if (returnType == int.class) {
+            return 0;
+          }
+          return null;
+        }
+      });
+  }
+
+  private static class StubFileProvider extends FileProvider {
+
+    private static final Language CSHARP = new AbstractLanguage("cs") {
+      @Override
+      public String[] getFileSuffixes() {
+        return new String[] {"cs"};
+      }
+    };
+
+    public StubFileProvider(SensorContext context) {
+      super(null, context);
+    }
+
+    @Override
+    public org.sonar.api.resources.File fromPath(String path) {
+      return new org.sonar.api.resources.File(CSHARP, path);
+    }
+
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates synthetic reports of "files" source files, each with "lines" covered lines visited up to "hits" times.
+ */
+class ReportGenerator {
+
+  private final File directory;
+  private final int files;
+  private final int lines;
+  private final int hits;
+  private final Random random = new Random(42);
+
+  public ReportGenerator(File directory, int files, int lines, int hits) {
+    this.directory = directory;
+    this.files = files;
+    this.lines = lines;
+    this.hits = hits;
+  }
+
+  private static String sourcePath(int file) {
+    return "src\\Generated\\Namespace" + (file % 100) + "\\Class" + file + ".cs";
+  }
+
+  private int nextHits() {
+    return random.nextInt(hits + 1);
+  }
+
+  public File ncover3(String name) throws IOException {
+    File report = new File(directory, name);
+    Writer writer = writer(report);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+      writer.write("<coverage profilerVersion=\"3.4.18.6937\" driverVersion=\"3.4.18.6937\" exportversion=\"3\">\n");
+      writer.write("  <documents>\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("    <doc id=\"" + (file + 1) + "\" excluded=\"false\" url=\"" + sourcePath(file) + "\" cs=\"B0BC97C776FACFF27CB56359F2B4FD3A\" om=\"17\" nid=\"0\" />\n");
+      }
+      writer.write("  </documents>\n");
+      writer.write("  <module moduleId=\"17\" name=\"Generated.dll\" assembly=\"Generated\">\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("    <class name=\"Generated.Class" + file + "\" excluded=\"false\" nid=\"0\">\n");
+        writer.write("      <method name=\"Method\" excluded=\"false\" instrumented=\"true\" cc=\"1\" vc=\"1\" nid=\"0\">\n");
+        for (int line = 1; line <= lines; line++) {
+          writer.write("        <seqpnt vc=\"" + nextHits() + "\" o=\"6\" l=\"" + line + "\" el=\"" + line + "\" c=\"9\" ec=\"10\" ex=\"false\" fl=\"0\" doc=\"" + (file + 1)
+            + "\" nid=\"0\" />\n");
+        }
+        writer.write("      </method>\n");
+        writer.write("    </class>\n");
+      }
+      writer.write("  </module>\n");
+      writer.write("</coverage>\n");
+    } finally {
+      writer.close();
+    }
+    return report;
+  }
+
+  public File openCover(String name) throws IOException {
+    File report = new File(directory, name);
+    Writer writer = writer(report);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+      writer.write("<CoverageSession xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+      writer.write("  <Summary numSequencePoints=\"28\" visitedSequencePoints=\"20\" numBranchPoints=\"12\" visitedBranchPoints=\"8\" sequenceCoverage=\"71.43\" />\n");
+      writer.write("  <Modules>\n");
+      writer.write("    <Module hash=\"DE-2D-20-DB-C7-7A-F5-8E-3C-33-9B-1D-83-2A-1E-48-F8-A8-EB-7B\">\n");
+      writer.write("      <FullName>C:\\Generated\\bin\\Generated.dll</FullName>\n");
+      writer.write("      <ModuleName>Generated</ModuleName>\n");
+      writer.write("      <Files>\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("        <File uid=\"" + (file + 1) + "\" fullPath=\"" + sourcePath(file) + "\" />\n");
+      }
+      writer.write("      </Files>\n");
+      writer.write("      <Classes>\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("        <Class>\n");
+        writer.write("          <FullName>Generated.Class" + file + "</FullName>\n");
+        writer.write("          <Methods>\n");
+        writer.write("            <Method visited=\"true\" cyclomaticComplexity=\"1\" sequenceCoverage=\"100\" branchCoverage=\"100\">\n");
+        writer.write("              <Summary numSequencePoints=\"3\" visitedSequencePoints=\"3\" numBranchPoints=\"1\" visitedBranchPoints=\"1\" />\n");
+        writer.write("              <MetadataToken>100663297</MetadataToken>\n");
+        writer.write("              <Name>System.Void Generated.Class" + file + "::Method()</Name>\n");
+        writer.write("              <FileRef uid=\"" + (file + 1) + "\" />\n");
+        writer.write("              <SequencePoints>\n");
+        for (int line = 1; line <= lines; line++) {
+          writer.write("                <SequencePoint vc=\"" + nextHits() + "\" uspid=\"" + line + "\" ordinal=\"" + (line - 1) + "\" offset=\"" + line + "\" sl=\"" + line
+            + "\" sc=\"9\" el=\"" + line + "\" ec=\"10\" />\n");
+        }
+        writer.write("              </SequencePoints>\n");
+        writer.write("              <BranchPoints />\n");
+        writer.write("              <MethodPoint xsi:type=\"SequencePoint\" vc=\"1\" uspid=\"1\" ordinal=\"0\" offset=\"0\" sl=\"1\" sc=\"9\" el=\"1\" ec=\"10\" />\n");
+        writer.write("            </Method>\n");
+        writer.write("          </Methods>\n");
+        writer.write("        </Class>\n");
+      }
+      writer.write("      </Classes>\n");
+      writer.write("    </Module>\n");
+      writer.write("  </Modules>\n");
+      writer.write("</CoverageSession>\n");
+    } finally {
+      writer.close();
+    }
+    return report;
+  }
+
+  public File visualStudioCoverageXml(String name) throws IOException {
+    File report = new File(directory, name);
+    Writer writer = writer(report);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+      writer.write("<results>\n");
+      writer.write("  <modules>\n");
+      writer.write("    <module name=\"generated.dll\" path=\"generated.dll\" id=\"FB216D2B58233E4094446935C1C5AF4C01000000\" block_coverage=\"20.00\" line_coverage=\"18.75\">\n");
+      writer.write("      <functions>\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("        <function id=\"" + file + "\" token=\"0x6000001\" name=\"Method()\" type_name=\"Class" + file + "\" block_coverage=\"0.00\" line_coverage=\"0.00\">\n");
+        writer.write("          <ranges>\n");
+        for (int line = 1; line <= lines; line++) {
+          writer.write("            <range source_id=\"" + file + "\" covered=\"" + (nextHits() > 0 ? "yes" : "no") + "\" start_line=\"" + line + "\" start_column=\"9\" end_line=\""
+            + line + "\" end_column=\"10\" />\n");
+        }
+        writer.write("          </ranges>\n");
+        writer.write("        </function>\n");
+      }
+      writer.write("      </functions>\n");
+      writer.write("      <source_files>\n");
+      for (int file = 0; file < files; file++) {
+        writer.write("        <source_file id=\"" + file + "\" path=\"" + sourcePath(file) + "\">\n");
+        writer.write("        </source_file>\n");
+      }
+      writer.write("      </source_files>\n");
+      writer.write("    </module>\n");
+      writer.write("  </modules>\n");
+      writer.write("</results>\n");
+    } finally {
+      writer.close();
+    }
+    return report;
+  }
+
+  /**
+   * Generates the index of a dotCover HTML report, along with one HTML file per source file in its "src" folder.
+   */
+  public File dotCover(String name) throws IOException {
+    File report = new File(directory, name + ".html");
+    Files.write("<!DOCTYPE html>\n<html>\n  <head><title>Generated</title></head>\n  <body></body>\n</html>\n", report, Charsets.UTF_8);
+
+    File sources = new File(directory, name + "/src");
+    if (!sources.mkdirs()) {
+      throw new IOException("Unable to create the directory " + sources.getAbsolutePath());
+    }
+
+    for (int file = 0; file < files; file++) {
+      Writer writer = writer(new File(sources, file + ".html"));
+      try {
+        writer.write("<!DOCTYPE html>\n<html>\n  <head>\n");
+        writer.write("    <title>" + sourcePath(file).toLowerCase() + "</title>\n");
+        writer.write("  </head>\n  <body>\n    <pre id=\"content\" class=\"source-code\">\n");
+        for (int line = 1; line <= lines; line++) {
+          writer.write("        int value" + line + " = Compute(" + line + ");\n");
+        }
+        writer.write("    </pre>\n");
+        writer.write("    <script type=\"text/javascript\">\n      highlightRanges([");
+        for (int line = 1; line <= lines; line++) {
+          if (line > 1) {
+            writer.write(',');
+          }
+          writer.write("[" + line + ",9," + line + ",10," + nextHits() + "]");
+        }
+        writer.write("]);\n    </script>\n  </body>\n</html>\n");
+      } finally {
+        writer.close();
+      }
+    }
+
+    return report;
+  }
+
+  /**
+   * Generates a TRX file with "files" tests, each with an output of "lines" lines.
+   */
+  public File visualStudioTestResults(String name) throws IOException {
+    File report = new File(directory, name);
+    Writer writer = writer(report);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      writer.write("<TestRun id=\"0ecff956-7215-452f-9ce6-2b6d45870188\" name=\"generated\" xmlns=\"http://microsoft.com/schemas/VisualStudio/TeamTest/2010\">\n");
+      writer.write("  <Results>\n");
+      int passed = 0;
+      for (int test = 0; test < files; test++) {
+        boolean success = nextHits() > 0;
+        if (success) {
+          passed++;
+        }
+        writer.write("    <UnitTestResult executionId=\"" + test + "\" testId=\"" + test + "\" testName=\"Test" + test + "\" duration=\"00:00:00.0" + (test % 10)
+          + "00000\" outcome=\"" + (success ? "Passed" : "Failed") + "\">\n");
+        writer.write("      <Output>\n        <StdOut>");
+        for (int line = 0; line < lines; line++) {
+          writer.write("Captured output line " + line + " of test " + test + "\n");
+        }
+        writer.write("</StdOut>\n      </Output>\n");
+        writer.write("    </UnitTestResult>\n");
+      }
+      writer.write("  </Results>\n");
+      writer.write("  <ResultSummary outcome=\"Failed\">\n");
+      writer.write("    <Counters total=\"" + files + "\" executed=\"" + files + "\" passed=\"" + passed + "\" failed=\"" + (files - passed)
+        + "\" error=\"0\" timeout=\"0\" aborted=\"0\" inconclusive=\"0\" passedButRunAborted=\"0\" notRunnable=\"0\" notExecuted=\"0\" />\n");
+      writer.write("  </ResultSummary>\n");
+      writer.write("</TestRun>\n");
+    } finally {
+      writer.close();
+    }
+    return report;
+  }
+
+  private static Writer writer(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8), 64 * 1024);
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of the canonical paths of source files, which appear in every report and are resolved by all the parsers.
+ * In lexical mode, paths are only made absolute and rid of their "." and ".." segments, without any file system access:
+ * symbolic links and the case of the file names are then left untouched.
+ * Entries are never invalidated, so that a cache must not outlive the batch: see {@link ParsedReportCache#canonicalPathCache(boolean)}.
+ */
+public class CanonicalPathCache {
+
+  public static final String LEXICAL_PROPERTY_KEY = "sonar.dotnet.tests.lexicalPathNormalization";
+
+  private static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+  private final Cache<String, String> cache;
+
+  public CanonicalPathCache(boolean lexicalOnly) {
+    this(DEFAULT_MAXIMUM_SIZE, lexicalOnly);
+  }
+
+  public CanonicalPathCache(int maximumSize, final boolean lexicalOnly) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(maximumSize)
+      .build(new CacheLoader<String, String>() {
+        @Override
+        public String load(String path) throws Exception {
+          return lexicalOnly ? lexicallyNormalizedPath(path) : new File(path).getCanonicalPath();
+        }
+      });
+  }
+
+  public String canonicalPath(String path) {
+    try {
+      return cache.get(path);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  public long hitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long missCount() {
+    return cache.stats().missCount();
+  }
+
+  @Override
+  public String toString() {
+    return "canonical path cache: " + hitCount() + " hits, " + missCount() + " misses";
+  }
+
+  static String lexicallyNormalizedPath(String path) {
+    return lexicallyNormalizedPath(new File(path).getAbsolutePath(), File.separatorChar);
+  }
+
+  @VisibleForTesting
+  static String lexicallyNormalizedPath(String absolutePath, char separator) {
+    LinkedList<String> segments = Lists.newLinkedList(Splitter.on(separator).split(absolutePath));
+
+    String root;
+    if (absolutePath.length() > 1 && absolutePath.charAt(0) == separator && absolutePath.charAt(1) == separator) {
+      // UNC path: the "\\server\share" root is kept as is, and ".." segments never go above it
+      segments.removeFirst();
+      segments.removeFirst();
+      root = "" + separator + separator + segments.removeFirst();
+      if (!segments.isEmpty()) {
+        root += separator + segments.removeFirst();
+      }
+    } else {
+      // The first segment is the root prefix: "" on Unix, or a drive such as "C:" on Windows
+      root = segments.removeFirst();
+    }
+
+    LinkedList<String> normalizedSegments = Lists.newLinkedList();
+    for (String segment : segments) {
+      if ("..".equals(segment)) {
+        if (!normalizedSegments.isEmpty()) {
+          normalizedSegments.removeLast();
+        }
+      } else if (!segment.isEmpty() && !".".equals(segment)) {
+        normalizedSegments.add(segment);
+      }
+    }
+
+    return root + separator + Joiner.on(separator).join(normalizedSegments);
+  }
+
+}
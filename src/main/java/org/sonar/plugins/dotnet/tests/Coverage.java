@@ -19,35 +19,91 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
 
+import javax.annotation.Nullable;
+
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Hits per line of each file. Files rejected by the file filter are never stored: parsers check {@link #accepts(String)}
+ * as soon as they know the path of a file, to skip its hits altogether.
+ */
 public class Coverage {
 
-  private final Table<String, Integer, Integer> hitsByLineAndFile = HashBasedTable.create();
+  private final Predicate<String> fileFilter;
+  private final Map<String, LineHits> hitsByFile = Maps.newLinkedHashMap();
+
+  private String lastFile;
+  private LineHits lastLineHits;
+
+  public Coverage() {
+    this(Predicates.<String>alwaysTrue());
+  }
+
+  public Coverage(Predicate<String> fileFilter) {
+    this.fileFilter = fileFilter;
+  }
+
+  public boolean accepts(String file) {
+    return fileFilter.apply(file);
+  }
+
+  Predicate<String> fileFilter() {
+    return fileFilter;
+  }
 
   public void addHits(String file, int line, int hits) {
-    Integer oldHits = hitsByLineAndFile.get(file, line);
+    LineHits lineHits = lineHits(file);
+    if (lineHits != null) {
+      lineHits.add(line, hits);
+    }
+  }
+
+  @Nullable
+  private LineHits lineHits(String file) {
+    // Parsers usually add the hits of a given file in a row
+    if (file != lastFile) {
+      LineHits lineHits = hitsByFile.get(file);
+      if (lineHits == null) {
+        if (!accepts(file)) {
+          return null;
+        }
+        lineHits = new LineHits();
+        hitsByFile.put(file, lineHits);
+      }
+
+      lastFile = file;
+      lastLineHits = lineHits;
+    }
+
+    return lastLineHits;
+  }
 
-    int newHits;
-    if (oldHits == null) {
-      newHits = hits;
-    } else {
-      newHits = hits + oldHits;
+  public void mergeWith(Coverage other) {
+    for (Map.Entry<String, LineHits> entry : other.hitsByFile.entrySet()) {
+      addAll(entry.getKey(), entry.getValue());
     }
+  }
 
-    hitsByLineAndFile.put(file, line, newHits);
+  void addAll(String file, LineHits lineHits) {
+    LineHits targetLineHits = lineHits(file);
+    if (targetLineHits != null) {
+      targetLineHits.addAll(lineHits);
+    }
   }
 
   public Set<String> files() {
-    return hitsByLineAndFile.rowKeySet();
+    return Collections.unmodifiableSet(hitsByFile.keySet());
   }
 
   public Map<Integer, Integer> hits(String file) {
-    return hitsByLineAndFile.row(file);
+    LineHits lineHits = hitsByFile.get(file);
+    return lineHits == null ? Collections.<Integer, Integer>emptyMap() : lineHits.asMap();
   }
 
 }
@@ -20,24 +20,55 @@
 package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class CoverageAggregator implements BatchExtension {
 
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageAggregator.class);
+
   private final CoverageConfiguration coverageConf;
   private final Settings settings;
   private final NCover3ReportParser ncover3ReportParser;
   private final OpenCoverReportParser openCoverReportParser;
   private final DotCoverReportsAggregator dotCoverReportsAggregator;
   private final VisualStudioCoverageXmlReportParser visualStudioCoverageXmlReportParser;
+  private final ParsedReportCache parsedReportCache;
+  private final CanonicalPathCache canonicalPathCache;
+  private final String parserConfiguration;
+  private final PersistentReportCache persistentReportCache;
+  private final CoverageSnapshotParser coverageSnapshotParser = new CoverageSnapshotParser();
 
   public CoverageAggregator(CoverageConfiguration coverageConf, Settings settings) {
+    this(coverageConf, settings, canonicalPathCache(settings, null), null);
+  }
+
+  public CoverageAggregator(CoverageConfiguration coverageConf, Settings settings, ParsedReportCache parsedReportCache) {
+    this(coverageConf, settings, canonicalPathCache(settings, parsedReportCache), parsedReportCache);
+  }
+
+  private CoverageAggregator(CoverageConfiguration coverageConf, Settings settings, CanonicalPathCache canonicalPathCache,
+    @Nullable ParsedReportCache parsedReportCache) {
     this(coverageConf, settings,
-      new NCover3ReportParser(), new OpenCoverReportParser(), new DotCoverReportsAggregator(new DotCoverReportParser()), new VisualStudioCoverageXmlReportParser());
+      new NCover3ReportParser(canonicalPathCache),
+      new OpenCoverReportParser(canonicalPathCache, ModuleFilter.fromSettings(settings), settings.getBoolean(OpenCoverReportParser.FAST_PARSING_PROPERTY_KEY)),
+      new DotCoverReportsAggregator(new DotCoverReportParser(canonicalPathCache), ParallelParsing.threads(settings)),
+      new VisualStudioCoverageXmlReportParser(canonicalPathCache, ModuleFilter.fromSettings(settings)),
+      parsedReportCache, canonicalPathCache);
   }
 
   @VisibleForTesting
@@ -47,16 +78,51 @@ public class CoverageAggregator implements BatchExtension {
     DotCoverReportsAggregator dotCoverReportsAggregator,
     VisualStudioCoverageXmlReportParser visualStudioCoverageXmlReportParser) {
 
+    this(coverageConf, settings, ncover3ReportParser, openCoverReportParser, dotCoverReportsAggregator, visualStudioCoverageXmlReportParser, null);
+  }
+
+  @VisibleForTesting
+  public CoverageAggregator(CoverageConfiguration coverageConf, Settings settings,
+    NCover3ReportParser ncover3ReportParser,
+    OpenCoverReportParser openCoverReportParser,
+    DotCoverReportsAggregator dotCoverReportsAggregator,
+    VisualStudioCoverageXmlReportParser visualStudioCoverageXmlReportParser,
+    @Nullable ParsedReportCache parsedReportCache) {
+
+    this(coverageConf, settings, ncover3ReportParser, openCoverReportParser, dotCoverReportsAggregator, visualStudioCoverageXmlReportParser, parsedReportCache, null);
+  }
+
+  private CoverageAggregator(CoverageConfiguration coverageConf, Settings settings,
+    NCover3ReportParser ncover3ReportParser,
+    OpenCoverReportParser openCoverReportParser,
+    DotCoverReportsAggregator dotCoverReportsAggregator,
+    VisualStudioCoverageXmlReportParser visualStudioCoverageXmlReportParser,
+    @Nullable ParsedReportCache parsedReportCache,
+    @Nullable CanonicalPathCache canonicalPathCache) {
+
     this.coverageConf = coverageConf;
     this.settings = settings;
     this.ncover3ReportParser = ncover3ReportParser;
     this.openCoverReportParser = openCoverReportParser;
     this.dotCoverReportsAggregator = dotCoverReportsAggregator;
     this.visualStudioCoverageXmlReportParser = visualStudioCoverageXmlReportParser;
+    this.parsedReportCache = parsedReportCache;
+    this.canonicalPathCache = canonicalPathCache;
+    this.parserConfiguration = parserConfiguration(settings);
+    this.persistentReportCache = PersistentReportCache.fromSettings(settings);
+  }
+
+  /**
+   * The canonical paths are shared by all the modules of the batch when a {@link ParsedReportCache} is registered,
+   * and by the parsers of this aggregator only otherwise.
+   */
+  private static CanonicalPathCache canonicalPathCache(Settings settings, @Nullable ParsedReportCache parsedReportCache) {
+    boolean lexicalOnly = settings.getBoolean(CanonicalPathCache.LEXICAL_PROPERTY_KEY);
+    return parsedReportCache == null ? new CanonicalPathCache(lexicalOnly) : parsedReportCache.canonicalPathCache(lexicalOnly);
   }
 
   public boolean hasCoverageProperty() {
-    return hasNCover3ReportPaths() || hasOpenCoverReportPaths() || hasDotCoverReportPaths() || hasVisualStudioCoverageXmlReportPaths();
+    return hasNCover3ReportPaths() || hasOpenCoverReportPaths() || hasDotCoverReportPaths() || hasVisualStudioCoverageXmlReportPaths() || hasCoverageSnapshotPaths();
   }
 
   private boolean hasNCover3ReportPaths() {
@@ -75,30 +141,140 @@ public class CoverageAggregator implements BatchExtension {
     return settings.hasKey(coverageConf.visualStudioCoverageXmlPropertyKey());
   }
 
+  private boolean hasCoverageSnapshotPaths() {
+    return coverageConf.coverageSnapshotPropertyKey() != null && settings.hasKey(coverageConf.coverageSnapshotPropertyKey());
+  }
+
+  /**
+   * Aggregates the coverage of all the configured reports. When a {@link ParsedReportCache} is registered, the result
+   * is shared by all the aggregators configured with the very same reports, whatever their language or module,
+   * and must therefore not be modified. Only this result is cached, not the coverage of each report.
+   */
+  public Coverage aggregate() {
+    final List<ReportParsing> reportParsings = reportParsings(Predicates.<String>alwaysTrue());
+    if (parsedReportCache == null) {
+      return aggregate(reportParsings, new Coverage());
+    }
+
+    List<Map.Entry<CoverageParser, File>> reports = Lists.newArrayListWithCapacity(reportParsings.size());
+    for (ReportParsing reportParsing : reportParsings) {
+      reports.add(Maps.immutableEntry(reportParsing.parser, reportParsing.report));
+    }
+    return parsedReportCache.aggregatedCoverage(reports, parserConfiguration, new Callable<Coverage>() {
+      @Override
+      public Coverage call() {
+        return aggregate(reportParsings, new Coverage());
+      }
+    });
+  }
+
+  /**
+   * Aggregates the coverage of the files accepted by the given filter only, which parsers apply as soon as they know
+   * the path of a file. Reports shared through the {@link ParsedReportCache} are still parsed in full once.
+   */
+  public Coverage aggregate(Predicate<String> fileFilter) {
+    return aggregate(new Coverage(fileFilter));
+  }
+
   public Coverage aggregate(Coverage coverage) {
+    if (parsedReportCache == null) {
+      return aggregate(reportParsings(coverage.fileFilter()), coverage);
+    }
+
+    coverage.mergeWith(aggregate());
+    return coverage;
+  }
+
+  private List<ReportParsing> reportParsings(Predicate<String> fileFilter) {
+    List<ReportParsing> reportParsings = Lists.newArrayList();
+
     if (hasNCover3ReportPaths()) {
-      aggregate(settings.getString(coverageConf.ncover3PropertyKey()), ncover3ReportParser, coverage);
+      addReportParsings(settings.getString(coverageConf.ncover3PropertyKey()), persisted(ncover3ReportParser), reportParsings, fileFilter);
     }
 
     if (hasOpenCoverReportPaths()) {
-      aggregate(settings.getString(coverageConf.openCoverPropertyKey()), openCoverReportParser, coverage);
+      addReportParsings(settings.getString(coverageConf.openCoverPropertyKey()), persisted(openCoverReportParser), reportParsings, fileFilter);
     }
 
     if (hasDotCoverReportPaths()) {
-      aggregate(settings.getString(coverageConf.dotCoverPropertyKey()), dotCoverReportsAggregator, coverage);
+      addReportParsings(settings.getString(coverageConf.dotCoverPropertyKey()), dotCoverReportsAggregator, reportParsings, fileFilter);
     }
 
     if (hasVisualStudioCoverageXmlReportPaths()) {
-      aggregate(settings.getString(coverageConf.visualStudioCoverageXmlPropertyKey()), visualStudioCoverageXmlReportParser, coverage);
+      addReportParsings(settings.getString(coverageConf.visualStudioCoverageXmlPropertyKey()), persisted(visualStudioCoverageXmlReportParser), reportParsings, fileFilter);
+    }
+
+    if (hasCoverageSnapshotPaths()) {
+      addReportParsings(settings.getString(coverageConf.coverageSnapshotPropertyKey()), coverageSnapshotParser, reportParsings, fileFilter);
+    }
+
+    return reportParsings;
+  }
+
+  private Coverage aggregate(List<ReportParsing> reportParsings, Coverage coverage) {
+    int threads = ParallelParsing.threads(settings);
+    if (threads <= 1) {
+      for (ReportParsing reportParsing : reportParsings) {
+        reportParsing.parseInto(coverage);
+      }
+    } else {
+      // Each report is parsed into its own partial coverage, merged in the sequential order to get the very same result
+      for (Coverage partialCoverage : ParallelParsing.invokeAll(threads, reportParsings)) {
+        coverage.mergeWith(partialCoverage);
+      }
+    }
+
+    if (canonicalPathCache != null) {
+      LOG.debug("Shared {}", canonicalPathCache);
     }
 
     return coverage;
   }
 
-  private static void aggregate(String reportPaths, CoverageParser parser, Coverage coverage) {
+  private CoverageParser persisted(CoverageParser parser) {
+    return persistentReportCache == null ? parser : persistentReportCache.cached(parser, parserConfiguration);
+  }
+
+  /**
+   * The settings of the parsers, which key their cached results: module filters drop modules, lexical normalization
+   * changes the paths, and the OpenCover fast path is kept apart to be on the safe side.
+   */
+  @VisibleForTesting
+  static String parserConfiguration(Settings settings) {
+    return ModuleFilter.fromSettings(settings)
+      + ";lexicalPathNormalization=" + settings.getBoolean(CanonicalPathCache.LEXICAL_PROPERTY_KEY)
+      + ";openCoverFastParsing=" + settings.getBoolean(OpenCoverReportParser.FAST_PARSING_PROPERTY_KEY);
+  }
+
+  private void addReportParsings(String reportPaths, CoverageParser parser, List<ReportParsing> reportParsings, Predicate<String> fileFilter) {
     for (String reportPath : Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths)) {
-      parser.parse(new File(reportPath), coverage);
+      reportParsings.add(new ReportParsing(parser, new File(reportPath), fileFilter));
     }
   }
 
+  private static class ReportParsing implements Callable<Coverage> {
+
+    private final CoverageParser parser;
+    private final File report;
+    private final Predicate<String> fileFilter;
+
+    public ReportParsing(CoverageParser parser, File report, Predicate<String> fileFilter) {
+      this.parser = parser;
+      this.report = report;
+      this.fileFilter = fileFilter;
+    }
+
+    public void parseInto(Coverage coverage) {
+      parser.parse(report, coverage);
+    }
+
+    @Override
+    public Coverage call() {
+      Coverage partialCoverage = new Coverage(fileFilter);
+      parser.parse(report, partialCoverage);
+      return partialCoverage;
+    }
+
+  }
+
 }
@@ -19,6 +19,8 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import javax.annotation.Nullable;
+
 public class CoverageConfiguration {
 
   private final String languageKey;
@@ -26,13 +28,20 @@ public class CoverageConfiguration {
   private final String openCoverPropertyKey;
   private final String dotCoverPropertyKey;
   private final String visualStudioCoverageXmlPropertyKey;
+  private final String coverageSnapshotPropertyKey;
 
   public CoverageConfiguration(String languageKey, String ncover3PropertyKey, String openCoverPropertyKey, String dotCoverPropertyKey, String visualStudioCoverageXmlPropertyKey) {
+    this(languageKey, ncover3PropertyKey, openCoverPropertyKey, dotCoverPropertyKey, visualStudioCoverageXmlPropertyKey, null);
+  }
+
+  public CoverageConfiguration(String languageKey, String ncover3PropertyKey, String openCoverPropertyKey, String dotCoverPropertyKey, String visualStudioCoverageXmlPropertyKey,
+    @Nullable String coverageSnapshotPropertyKey) {
     this.languageKey = languageKey;
     this.ncover3PropertyKey = ncover3PropertyKey;
     this.openCoverPropertyKey = openCoverPropertyKey;
     this.dotCoverPropertyKey = dotCoverPropertyKey;
     this.visualStudioCoverageXmlPropertyKey = visualStudioCoverageXmlPropertyKey;
+    this.coverageSnapshotPropertyKey = coverageSnapshotPropertyKey;
   }
 
   public String languageKey() {
@@ -55,4 +64,12 @@ public class CoverageConfiguration {
     return visualStudioCoverageXmlPropertyKey;
   }
 
+  /**
+   * Key of the property listing the snapshots written by {@link CoverageMerger}, null when not supported.
+   */
+  @Nullable
+  public String coverageSnapshotPropertyKey() {
+    return coverageSnapshotPropertyKey;
+  }
+
 }
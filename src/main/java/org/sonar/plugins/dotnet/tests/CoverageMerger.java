@@ -0,0 +1,142 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Command line entry point which merges coverage reports of any format into a single {@link CoverageSnapshot},
+ * for instance on the test agents, so that the analysis only has to load it through
+ * {@link CoverageConfiguration#coverageSnapshotPropertyKey()}.
+ * <p>
+ * The runtime dependencies of this library are provided by SonarQube, so the tool is run from the standalone jar built
+ * by the "merger" profile, which bundles them along with its main class:
+ * <pre>
+ * mvn package -Pmerger
+ * java -jar target/sonar-dotnet-tests-library-&lt;version&gt;-merger.jar --opencover a.xml,b.xml --output coverage.snapshot
+ * </pre>
+ * or from this jar, given the sonar-plugin-api jar of the SonarQube version in use and its dependencies:
+ * <pre>
+ * java -cp sonar-dotnet-tests-library.jar:sonar-plugin-api.jar:&lt;its dependencies&gt; org.sonar.plugins.dotnet.tests.CoverageMerger ...
+ * </pre>
+ */
+public final class CoverageMerger {
+
+  private static final String NCOVER3_KEY = "ncover3";
+  private static final String OPENCOVER_KEY = "opencover";
+  private static final String DOTCOVER_KEY = "dotcover";
+  private static final String VISUAL_STUDIO_KEY = "visualstudio";
+  private static final String SNAPSHOT_KEY = "snapshot";
+
+  private static final Map<String, String> REPORT_OPTIONS = ImmutableMap.<String, String>builder()
+    .put("--ncover3", NCOVER3_KEY)
+    .put("--opencover", OPENCOVER_KEY)
+    .put("--dotcover", DOTCOVER_KEY)
+    .put("--visualstudio", VISUAL_STUDIO_KEY)
+    .put("--snapshot", SNAPSHOT_KEY)
+    .build();
+
+  private static final String USAGE = "Usage: CoverageMerger [--threads <count>] [--lexical-paths]"
+    + " [--ncover3 <reports>] [--opencover <reports>] [--dotcover <reports>] [--visualstudio <reports>] [--snapshot <snapshots>]"
+    + " --output <snapshot>\n"
+    + "where <reports> and <snapshots> are comma-separated lists of files, and each option can be repeated.";
+
+  private CoverageMerger() {
+  }
+
+  public static void main(String[] args) {
+    int status;
+    try {
+      status = run(args, System.out, System.err);
+    } catch (RuntimeException e) {
+      System.err.println("Error: " + e.getMessage());
+      status = 1;
+    }
+    System.exit(status);
+  }
+
+  @VisibleForTesting
+  static int run(String[] args, PrintStream out, PrintStream err) {
+    Settings settings = new Settings();
+    settings.setProperty(ParallelParsing.THREADS_PROPERTY_KEY, Runtime.getRuntime().availableProcessors());
+    File output = null;
+
+    for (int i = 0; i < args.length; i++) {
+      String option = args[i];
+      if ("--lexical-paths".equals(option)) {
+        settings.setProperty(CanonicalPathCache.LEXICAL_PROPERTY_KEY, true);
+        continue;
+      }
+
+      if (i + 1 == args.length || !isKnownOption(option)) {
+        err.println(i + 1 == args.length && isKnownOption(option) ? "Missing value for " + option : "Unknown option " + option);
+        err.println(USAGE);
+        return 1;
+      }
+
+      String value = args[++i];
+      if ("--output".equals(option)) {
+        output = new File(value);
+      } else if ("--threads".equals(option)) {
+        if (!isPositiveInt(value)) {
+          err.println("Invalid value for --threads: " + value);
+          err.println(USAGE);
+          return 1;
+        }
+        settings.setProperty(ParallelParsing.THREADS_PROPERTY_KEY, value);
+      } else {
+        String key = REPORT_OPTIONS.get(option);
+        settings.setProperty(key, settings.hasKey(key) ? settings.getString(key) + "," + value : value);
+      }
+    }
+
+    if (output == null) {
+      err.println("Missing --output");
+      err.println(USAGE);
+      return 1;
+    }
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", NCOVER3_KEY, OPENCOVER_KEY, DOTCOVER_KEY, VISUAL_STUDIO_KEY, SNAPSHOT_KEY);
+    Coverage coverage = new CoverageAggregator(coverageConf, settings).aggregate(new Coverage());
+    CoverageSnapshot.write(coverage, output);
+
+    out.println("Merged the coverage of " + coverage.files().size() + " files into " + output.getAbsolutePath());
+    return 0;
+  }
+
+  private static boolean isPositiveInt(String value) {
+    try {
+      return Integer.parseInt(value) > 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static boolean isKnownOption(String option) {
+    return REPORT_OPTIONS.containsKey(option) || "--output".equals(option) || "--threads".equals(option);
+  }
+
+}
@@ -49,19 +49,26 @@ public class CoverageReportImportSensor implements Sensor {
 
   @Override
   public void analyse(Project project, SensorContext context) {
-    analyze(context, new FileProvider(project, context), new Coverage());
+    FileProvider fileProvider = new FileProvider(project, context);
+    // Parsers skip the files outside of the source directories right away, possibly from several threads:
+    // resources and languages are only resolved below, in the sensor thread
+    analyze(context, fileProvider, coverageAggregator.aggregate(fileProvider.sourceDirsFilter()));
+  }
+
+  private boolean isOfLanguage(org.sonar.api.resources.File sonarFile) {
+    return coverageConf.languageKey().equals(sonarFile.getLanguage().getKey());
   }
 
   @VisibleForTesting
   void analyze(SensorContext context, FileProvider fileProvider, Coverage coverage) {
-    coverageAggregator.aggregate(coverage);
     CoverageMeasuresBuilder coverageMeasureBuilder = CoverageMeasuresBuilder.create();
 
+    Map<String, org.sonar.api.resources.File> sonarFiles = fileProvider.fromPaths(coverage.files());
     for (String filePath : coverage.files()) {
-      org.sonar.api.resources.File sonarFile = fileProvider.fromPath(filePath);
+      org.sonar.api.resources.File sonarFile = sonarFiles.get(filePath);
 
       if (sonarFile != null) {
-        if (coverageConf.languageKey().equals(sonarFile.getLanguage().getKey())) {
+        if (isOfLanguage(sonarFile)) {
           coverageMeasureBuilder.reset();
           for (Map.Entry<Integer, Integer> entry : coverage.hits(filePath).entrySet()) {
             coverageMeasureBuilder.setHits(entry.getKey(), entry.getValue());
@@ -0,0 +1,306 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary snapshot of a {@link Coverage}, which can be written once and loaded cheaply many times.
+ * <p>
+ * Layout, all numbers being unsigned LEB128 varints unless stated otherwise:
+ * <ul>
+ *   <li>header: the "DNCS" magic and the format version, as 4 bytes big-endian ints</li>
+ *   <li>one block per file: the number of lines, then for each line its zigzag-encoded delta with the previous line
+ *   and its hits</li>
+ *   <li>index: the number of files, then for each file its path as the length of the prefix shared with the previous
+ *   path followed by the length and UTF-8 bytes of the remaining suffix, and the offset of its block</li>
+ *   <li>footer: the offset of the index as a 8 bytes big-endian long, and the magic again</li>
+ * </ul>
+ * Snapshots are memory-mapped: opening one only decodes its index, the hits of a file are decoded when requested.
+ * Short-lived files which are deleted or renamed while in use are rather loaded on the heap, since a mapping keeps
+ * the file locked on Windows until it is garbage collected.
+ */
+public final class CoverageSnapshot {
+
+  private static final int MAGIC = 0x444E4353;
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int FOOTER_SIZE = 12;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File file;
+  private final ByteBuffer buffer;
+  private final Map<String, Integer> offsetsByFile;
+
+  private CoverageSnapshot(File file, ByteBuffer buffer, Map<String, Integer> offsetsByFile) {
+    this.file = file;
+    this.buffer = buffer;
+    this.offsetsByFile = offsetsByFile;
+  }
+
+  public static void write(Coverage coverage, File file) {
+    OutputStream output = null;
+    boolean threw = true;
+    try {
+      output = new FileOutputStream(file);
+      CountingOutputStream countingOutput = new CountingOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+      output = countingOutput;
+      write(coverage, countingOutput);
+      threw = false;
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      close(output, threw);
+    }
+  }
+
+  private static void write(Coverage coverage, CountingOutputStream output) throws IOException {
+    DataOutputStream dataOutput = new DataOutputStream(output);
+    dataOutput.writeInt(MAGIC);
+    dataOutput.writeInt(VERSION);
+
+    long[] offsets = new long[coverage.files().size()];
+    int i = 0;
+    for (String file : coverage.files()) {
+      offsets[i++] = output.getCount();
+      Map<Integer, Integer> hits = coverage.hits(file);
+      writeVarint(output, hits.size());
+      int previousLine = 0;
+      for (Map.Entry<Integer, Integer> entry : hits.entrySet()) {
+        int line = entry.getKey();
+        int delta = line - previousLine;
+        writeVarint(output, (delta << 1) ^ (delta >> 31));
+        writeVarint(output, entry.getValue());
+        previousLine = line;
+      }
+    }
+
+    long indexOffset = output.getCount();
+    writeVarint(output, offsets.length);
+    byte[] previousPath = new byte[0];
+    i = 0;
+    for (String file : coverage.files()) {
+      byte[] path = file.getBytes(Charsets.UTF_8);
+      int sharedPrefix = sharedPrefixLength(previousPath, path);
+      writeVarint(output, sharedPrefix);
+      writeVarint(output, path.length - sharedPrefix);
+      output.write(path, sharedPrefix, path.length - sharedPrefix);
+      writeVarint(output, offsets[i++]);
+      previousPath = path;
+    }
+
+    dataOutput.writeLong(indexOffset);
+    dataOutput.writeInt(MAGIC);
+    dataOutput.flush();
+  }
+
+  private static int sharedPrefixLength(byte[] a, byte[] b) {
+    int length = Math.min(a.length, b.length);
+    int i = 0;
+    while (i < length && a[i] == b[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  private static void writeVarint(OutputStream output, long value) throws IOException {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      output.write((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    output.write((int) remaining);
+  }
+
+  private static void writeVarint(OutputStream output, int value) throws IOException {
+    writeVarint(output, value & 0xFFFFFFFFL);
+  }
+
+  public static CoverageSnapshot open(File file) {
+    return open(file, true);
+  }
+
+  /**
+   * Reads the whole snapshot on the heap, so that the file is released as soon as this method returns.
+   */
+  public static CoverageSnapshot load(File file) {
+    return open(file, false);
+  }
+
+  private static CoverageSnapshot open(File file, boolean mapped) {
+    RandomAccessFile randomAccessFile = null;
+    try {
+      randomAccessFile = new RandomAccessFile(file, "r");
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      Preconditions.checkArgument(size >= HEADER_SIZE + FOOTER_SIZE && size <= Integer.MAX_VALUE, notASnapshot(file));
+      ByteBuffer buffer;
+      if (mapped) {
+        // The mapping remains valid once the channel is closed
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } else {
+        buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) == -1) {
+            throw new IllegalArgumentException(notASnapshot(file));
+          }
+        }
+        buffer.flip();
+      }
+      return new CoverageSnapshot(file, buffer, readIndex(file, buffer));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(randomAccessFile);
+    }
+  }
+
+  private static Map<String, Integer> readIndex(File file, ByteBuffer buffer) {
+    int size = buffer.limit();
+    Preconditions.checkArgument(buffer.getInt(0) == MAGIC && buffer.getInt(size - 4) == MAGIC, notASnapshot(file));
+    int version = buffer.getInt(4);
+    Preconditions.checkArgument(version == VERSION, "Unsupported coverage snapshot version " + version + " in " + file.getAbsolutePath());
+
+    long indexOffset = buffer.getLong(size - FOOTER_SIZE);
+    Preconditions.checkArgument(indexOffset >= HEADER_SIZE && indexOffset <= size - FOOTER_SIZE, notASnapshot(file));
+
+    try {
+      ByteBuffer index = buffer.duplicate();
+      index.position((int) indexOffset);
+      index.limit(size - FOOTER_SIZE);
+
+      int files = readVarint(index);
+      Map<String, Integer> offsetsByFile = Maps.newLinkedHashMap();
+      byte[] path = new byte[0];
+      for (int i = 0; i < files; i++) {
+        int sharedPrefix = readVarint(index);
+        int suffixLength = readVarint(index);
+        Preconditions.checkArgument(sharedPrefix <= path.length && suffixLength <= index.remaining(), notASnapshot(file));
+        byte[] newPath = new byte[sharedPrefix + suffixLength];
+        System.arraycopy(path, 0, newPath, 0, sharedPrefix);
+        index.get(newPath, sharedPrefix, suffixLength);
+        path = newPath;
+
+        long offset = readVarLong(index);
+        Preconditions.checkArgument(offset >= HEADER_SIZE && offset < indexOffset, notASnapshot(file));
+        offsetsByFile.put(new String(path, Charsets.UTF_8), (int) offset);
+      }
+      return offsetsByFile;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException(notASnapshot(file), e);
+    }
+  }
+
+  private static String notASnapshot(File file) {
+    return "Not a valid coverage snapshot: " + file.getAbsolutePath();
+  }
+
+  private static int readVarint(ByteBuffer buffer) {
+    return (int) readVarLong(buffer);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long result = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      result |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0 && shift < 64);
+    return result;
+  }
+
+  public Set<String> files() {
+    return Collections.unmodifiableSet(offsetsByFile.keySet());
+  }
+
+  public Map<Integer, Integer> hits(String file) {
+    Integer offset = offsetsByFile.get(file);
+    if (offset == null) {
+      return Collections.emptyMap();
+    }
+
+    LineHits lineHits = new LineHits();
+    readHits(offset, lineHits);
+    return lineHits.asMap();
+  }
+
+  /**
+   * Adds the hits of the files accepted by the given coverage; the blocks of the other files are never decoded.
+   */
+  public Coverage mergeInto(Coverage coverage) {
+    for (Map.Entry<String, Integer> entry : offsetsByFile.entrySet()) {
+      if (!coverage.accepts(entry.getKey())) {
+        continue;
+      }
+      LineHits lineHits = new LineHits();
+      readHits(entry.getValue(), lineHits);
+      coverage.addAll(entry.getKey(), lineHits);
+    }
+    return coverage;
+  }
+
+  private void readHits(int offset, LineHits lineHits) {
+    // Each reader gets its own position, so that a snapshot can be shared between threads
+    ByteBuffer data = buffer.duplicate();
+    data.position(offset);
+
+    try {
+      int lines = readVarint(data);
+      int line = 0;
+      for (int i = 0; i < lines; i++) {
+        int zigzagDelta = readVarint(data);
+        line += (zigzagDelta >>> 1) ^ -(zigzagDelta & 1);
+        lineHits.add(line, readVarint(data));
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException(notASnapshot(file), e);
+    }
+  }
+
+  private static void close(OutputStream output, boolean threw) {
+    try {
+      Closeables.close(output, threw);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+}
@@ -22,82 +22,329 @@ package org.sonar.plugins.dotnet.tests;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.io.Files;
+import com.google.common.io.Closeables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 public class DotCoverReportParser implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(DotCoverReportParser.class);
 
+  private final CanonicalPathCache canonicalPathCache;
+
+  public DotCoverReportParser() {
+    this(new CanonicalPathCache(false));
+  }
+
+  public DotCoverReportParser(CanonicalPathCache canonicalPathCache) {
+    this.canonicalPathCache = canonicalPathCache;
+  }
+
   @Override
   public void parse(File file, Coverage coverage) {
     LOG.info("Parsing the dotCover report " + file.getAbsolutePath());
-    new Parser(file, coverage).parse();
+    new Parser(file, coverage, canonicalPathCache).parse();
   }
 
+  /**
+   * Scanner over the HTML report, which never holds more than a buffer of it in memory.
+   * The report is read once to locate the last highlightRanges() call, and then again from that call only to decode it.
+   */
   private static class Parser {
 
-    private static final Pattern TITLE_PATTERN = Pattern.compile(".*?<title>(.*?)</title>.*", Pattern.DOTALL);
-    private static final Pattern COVERED_LINES_PATTERN_1 = Pattern.compile(
-      ".*<script type=\"text/javascript\">\\s*+highlightRanges\\(\\[(.*?)\\]\\);\\s*+</script>.*",
-      Pattern.DOTALL);
-    private static final Pattern COVERED_LINES_PATTERN_2 = Pattern.compile("\\[(\\d++),\\d++,\\d++,\\d++,(\\d++)\\]");
+    private static final Token TITLE_START = new Token("<title>");
+    private static final char[] TITLE_END = "</title>".toCharArray();
+    private static final Token SCRIPT_START = new Token("<script type=\"text/javascript\">");
+    private static final char[] HIGHLIGHT_RANGES_START = "highlightRanges([".toCharArray();
+    private static final char[] HIGHLIGHT_RANGES_END = ");".toCharArray();
+    private static final char[] SCRIPT_END = "</script>".toCharArray();
+    private static final int MAX_TITLE_LENGTH = 32 * 1024;
+    private static final int RANGE_SIZE = 5;
 
     private final File file;
     private final Coverage coverage;
+    private final CanonicalPathCache canonicalPathCache;
+    private Reader reader;
+    private final char[] buffer = new char[8 * 1024];
+    private int position;
+    private int limit;
+    private long bufferOffset;
 
-    public Parser(File file, Coverage coverage) {
+    public Parser(File file, Coverage coverage, CanonicalPathCache canonicalPathCache) {
       this.file = file;
       this.coverage = coverage;
+      this.canonicalPathCache = canonicalPathCache;
     }
 
     public void parse() {
-      String contents;
       try {
-        contents = Files.toString(file, Charsets.UTF_8);
+        open(0);
+
+        String fileCanonicalPath = extractFileCanonicalPath();
+        // The whole report is about a single file, which can be skipped right away
+        if (coverage.accepts(fileCanonicalPath)) {
+          collectCoverage(fileCanonicalPath);
+        }
       } catch (IOException e) {
         throw Throwables.propagate(e);
+      } finally {
+        Closeables.closeQuietly(reader);
       }
+    }
 
-      String fileCanonicalPath = extractFileCanonicalPath(contents);
-      collectCoverage(fileCanonicalPath, contents);
+    private String extractFileCanonicalPath() throws IOException {
+      Preconditions.checkArgument(skipPast(TITLE_START), "The mandatory <title> tag is missing in " + file.getAbsolutePath());
+
+      String lowerCaseAbsolutePath = readUntil(TITLE_END);
+      return canonicalPathCache.canonicalPath(lowerCaseAbsolutePath);
     }
 
-    private static String extractFileCanonicalPath(String contents) {
-      Matcher matcher = TITLE_PATTERN.matcher(contents);
-      checkMatches(matcher);
+    private void collectCoverage(String fileCanonicalPath) throws IOException {
+      // As before, only the last highlightRanges() call of the report is taken into account, so the others are never decoded
+      long lastRangesOffset = -1;
+      while (skipPast(SCRIPT_START)) {
+        if (skipHighlightRangesStart()) {
+          lastRangesOffset = offset();
+        }
+      }
+
+      Preconditions.checkArgument(lastRangesOffset != -1, "The mandatory highlightRanges() call is missing in " + file.getAbsolutePath());
 
-      String lowerCaseAbsolutePath = matcher.group(1);
+      Closeables.closeQuietly(reader);
+      open(lastRangesOffset);
+      readRanges(fileCanonicalPath);
+    }
 
-      try {
-        return new File(lowerCaseAbsolutePath).getCanonicalPath();
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
+    /**
+     * Moves right after "highlightRanges([" if it is the first significant content of the script.
+     */
+    private boolean skipHighlightRangesStart() throws IOException {
+      int c = readSignificant();
+      for (int i = 0; i < HIGHLIGHT_RANGES_START.length; i++) {
+        if (c != HIGHLIGHT_RANGES_START[i]) {
+          // The character may start the next script tag
+          if (c != -1) {
+            position--;
+          }
+          return false;
+        }
+        if (i < HIGHLIGHT_RANGES_START.length - 1) {
+          c = read();
+        }
       }
+      return true;
     }
 
-    private void collectCoverage(String fileCanonicalPath, String contents) {
-      Matcher matcher = COVERED_LINES_PATTERN_1.matcher(contents);
-      checkMatches(matcher);
-      String highlightedContents = matcher.group(1);
+    /**
+     * Reads the "[line,column,line,column,hits],...]);</script>" ranges following "highlightRanges([".
+     */
+    private void readRanges(String fileCanonicalPath) throws IOException {
+      int[] range = new int[RANGE_SIZE];
 
-      matcher = COVERED_LINES_PATTERN_2.matcher(highlightedContents);
+      int c = readSignificant();
+      while (c == '[') {
+        for (int i = 0; i < RANGE_SIZE; i++) {
+          range[i] = readInt();
+          expect(i == RANGE_SIZE - 1 ? ']' : ',', readSignificant());
+        }
+        coverage.addHits(fileCanonicalPath, range[0], range[RANGE_SIZE - 1]);
 
-      while (matcher.find()) {
-        int line = Integer.parseInt(matcher.group(1));
-        int hits = Integer.parseInt(matcher.group(2));
-        coverage.addHits(fileCanonicalPath, line, hits);
+        c = readSignificant();
+        if (c == ',') {
+          c = readSignificant();
+        }
       }
+
+      expect(']', c);
+      expect(HIGHLIGHT_RANGES_END, read());
+      expect(SCRIPT_END, readSignificant());
     }
 
-    private static void checkMatches(Matcher matcher) {
-      Preconditions.checkArgument(matcher.matches(), "The report contents does not match the following regular expression: " + matcher.pattern().pattern());
+    private int readInt() throws IOException {
+      int c = readSignificant();
+      int value = 0;
+      int digits = 0;
+
+      while (c >= '0' && c <= '9') {
+        int digit = c - '0';
+        if (value > (Integer.MAX_VALUE - digit) / 10) {
+          throw new IllegalArgumentException("Too large number in the highlightRanges() call of " + file.getAbsolutePath());
+        }
+        value = value * 10 + digit;
+        digits++;
+        c = read();
+      }
+
+      if (digits == 0) {
+        throw unexpected(c);
+      }
+      if (c != -1) {
+        position--;
+      }
+
+      return value;
+    }
+
+    private void expect(char expected, int actual) {
+      if (expected != actual) {
+        throw unexpected(actual);
+      }
+    }
+
+    /**
+     * Expects the given token, the first character of which has already been read.
+     */
+    private void expect(char[] expected, int first) throws IOException {
+      expect(expected[0], first);
+      for (int i = 1; i < expected.length; i++) {
+        expect(expected[i], read());
+      }
+    }
+
+    private IllegalArgumentException unexpected(int c) {
+      String found = c == -1 ? "end of file" : "'" + (char) c + "'";
+      return new IllegalArgumentException("Unexpected " + found + " in the highlightRanges() call of " + file.getAbsolutePath());
+    }
+
+    private int readSignificant() throws IOException {
+      int c;
+      do {
+        c = read();
+      } while (c != -1 && Character.isWhitespace(c));
+      return c;
+    }
+
+    /**
+     * Moves right after the next occurrence of the given token, without ever going backwards.
+     */
+    private boolean skipPast(Token token) throws IOException {
+      int matched = 0;
+
+      int c;
+      while ((c = read()) != -1) {
+        matched = token.advance(matched, (char) c);
+        if (matched == token.length()) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private String readUntil(char[] token) throws IOException {
+      StringBuilder sb = new StringBuilder();
+
+      int c;
+      while ((c = read()) != -1) {
+        sb.append((char) c);
+        if (endsWith(sb, token)) {
+          sb.setLength(sb.length() - token.length);
+          return sb.toString();
+        }
+        Preconditions.checkArgument(sb.length() <= MAX_TITLE_LENGTH, "The <title> tag is not closed in " + file.getAbsolutePath());
+      }
+
+      throw new IllegalArgumentException("The <title> tag is not closed in " + file.getAbsolutePath());
+    }
+
+    private static boolean endsWith(StringBuilder sb, char[] token) {
+      int offset = sb.length() - token.length;
+      if (offset < 0) {
+        return false;
+      }
+      for (int i = 0; i < token.length; i++) {
+        if (sb.charAt(offset + i) != token[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void open(long offset) throws IOException {
+      reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
+      position = 0;
+      limit = 0;
+      bufferOffset = offset;
+
+      long remaining = offset;
+      while (remaining > 0) {
+        long skipped = reader.skip(remaining);
+        if (skipped <= 0) {
+          throw new IOException("Unexpected end of file while skipping to the highlightRanges() call of " + file.getAbsolutePath());
+        }
+        remaining -= skipped;
+      }
+    }
+
+    /**
+     * Returns the number of characters read so far from the start of the report.
+     */
+    private long offset() {
+      return bufferOffset + position;
+    }
+
+    private int read() throws IOException {
+      if (position == limit) {
+        bufferOffset += limit;
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          return -1;
+        }
+      }
+
+      return buffer[position++];
+    }
+
+  }
+
+  /**
+   * Knuth-Morris-Pratt automaton for a token, so that a stream can be searched one character at a time.
+   */
+  private static class Token {
+
+    private final char[] chars;
+    private final int[] failure;
+
+    public Token(String token) {
+      this.chars = token.toCharArray();
+      this.failure = new int[chars.length];
+
+      int k = 0;
+      for (int i = 1; i < chars.length; i++) {
+        while (k > 0 && chars[i] != chars[k]) {
+          k = failure[k - 1];
+        }
+        if (chars[i] == chars[k]) {
+          k++;
+        }
+        failure[i] = k;
+      }
+    }
+
+    public int length() {
+      return chars.length;
+    }
+
+    /**
+     * Returns the number of matched characters after reading c, given the number of characters matched before.
+     */
+    public int advance(int matched, char c) {
+      int result = matched;
+      while (result > 0 && c != chars[result]) {
+        result = failure[result - 1];
+      }
+      if (c == chars[result]) {
+        result++;
+      }
+      return result;
     }
 
   }
@@ -19,25 +19,33 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
-import com.google.common.io.Files;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 public class DotCoverReportsAggregator implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(DotCoverReportsAggregator.class);
 
+  private static final int BATCHES_PER_THREAD = 4;
+
   private final DotCoverReportParser parser;
+  private final int threads;
 
   public DotCoverReportsAggregator(DotCoverReportParser parser) {
+    this(parser, 1);
+  }
+
+  public DotCoverReportsAggregator(DotCoverReportParser parser, int threads) {
     this.parser = parser;
+    this.threads = threads;
   }
 
   @Override
@@ -49,21 +57,33 @@ public class DotCoverReportsAggregator implements CoverageParser {
     File folder = new File(file.getParentFile(), folderName + "/src");
     Preconditions.checkArgument(folder.exists(), "The following report dotCover report HTML sources folder cannot be found: " + folder.getAbsolutePath());
 
+    List<File> reportFiles = Lists.newArrayList();
     for (File reportFile : FileUtils.listFiles(folder, new String[] {"html"}, false)) {
       if (!isExcluded(reportFile)) {
+        reportFiles.add(reportFile);
+      }
+    }
+
+    if (threads <= 1) {
+      for (File reportFile : reportFiles) {
         parser.parse(reportFile, coverage);
       }
+    } else {
+      // Consecutive files are parsed in batches, whose partial coverages are merged back in the listing order
+      List<BatchParsing> batchParsings = Lists.newArrayList();
+      int batchSize = Math.max(1, (reportFiles.size() + threads * BATCHES_PER_THREAD - 1) / (threads * BATCHES_PER_THREAD));
+      for (List<File> batch : Lists.partition(reportFiles, batchSize)) {
+        batchParsings.add(new BatchParsing(parser, batch, coverage.fileFilter()));
+      }
+
+      for (Coverage partialCoverage : ParallelParsing.invokeAll(threads, batchParsings)) {
+        coverage.mergeWith(partialCoverage);
+      }
     }
   }
 
   private static void checkIsHtml(File file) {
-    String contents;
-    try {
-      contents = Files.toString(file, Charsets.UTF_8);
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
-    Preconditions.checkArgument(contents.startsWith("<!DOCTYPE html>"), "Only dotCover HTML reports which start with \"<!DOCTYPE html>\" are supported.");
+    Preconditions.checkArgument(HeaderSniffer.startsWith(file, "<!DOCTYPE html>"), "Only dotCover HTML reports which start with \"<!DOCTYPE html>\" are supported.");
   }
 
   private static String extractFolderName(File file) {
@@ -78,4 +98,27 @@ public class DotCoverReportsAggregator implements CoverageParser {
     return "nosource.html".equals(file.getName());
   }
 
+  private static class BatchParsing implements Callable<Coverage> {
+
+    private final DotCoverReportParser parser;
+    private final List<File> reportFiles;
+    private final Predicate<String> fileFilter;
+
+    public BatchParsing(DotCoverReportParser parser, List<File> reportFiles, Predicate<String> fileFilter) {
+      this.parser = parser;
+      this.reportFiles = reportFiles;
+      this.fileFilter = fileFilter;
+    }
+
+    @Override
+    public Coverage call() {
+      Coverage partialCoverage = new Coverage(fileFilter);
+      for (File reportFile : reportFiles) {
+        parser.parse(reportFile, partialCoverage);
+      }
+      return partialCoverage;
+    }
+
+  }
+
 }
@@ -19,27 +19,142 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOCase;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Layer of abstraction to improve the testability of the sensor.
+ * Maps file paths to SonarQube resources, relatively to the project's source directories.
+ * Source directories are indexed once, and the resolution of each directory is memoized,
+ * so that resolving many files of the same directories costs a single lookup each.
+ * Not thread-safe, except for the filters returned by {@link #sourceDirsFilter()}.
  */
 public class FileProvider {
 
   private final Project project;
   private final SensorContext context;
+  private Set<String> sourceDirs;
+  private final Map<String, String> relativeDirs = Maps.newHashMap();
 
   public FileProvider(Project project, SensorContext context) {
     this.project = project;
     this.context = context;
   }
 
+  @Nullable
   public org.sonar.api.resources.File fromPath(String path) {
+    org.sonar.api.resources.File sonarFile = sonarFile(path);
     // Workaround SonarQube < 4.2, the context should not be required
-    return context.getResource(org.sonar.api.resources.File.fromIOFile(new File(new File(path).getAbsolutePath()), project));
+    return sonarFile == null ? null : context.getResource(sonarFile);
+  }
+
+  /**
+   * Resolves all the given paths at once, paths outside of SonarQube are left out of the returned map.
+   */
+  public Map<String, org.sonar.api.resources.File> fromPaths(Collection<String> paths) {
+    Map<String, org.sonar.api.resources.File> result = Maps.newHashMapWithExpectedSize(paths.size());
+    for (String path : paths) {
+      org.sonar.api.resources.File sonarFile = fromPath(path);
+      if (sonarFile != null) {
+        result.put(path, sonarFile);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Accepts the paths under the source directories. The filter is a pure lookup in an immutable set, resolved up front,
+   * which neither touches the context nor this provider: parsers can therefore apply it from several threads.
+   */
+  public Predicate<String> sourceDirsFilter() {
+    final Set<String> sourceDirKeys = ImmutableSet.copyOf(sourceDirs());
+    return new Predicate<String>() {
+      @Override
+      public boolean apply(String path) {
+        String normalizedPath = FilenameUtils.normalizeNoEndSeparator(new File(path).getAbsolutePath());
+        if (normalizedPath == null) {
+          return false;
+        }
+
+        for (File dir = new File(normalizedPath).getParentFile(); dir != null; dir = dir.getParentFile()) {
+          if (sourceDirKeys.contains(key(dir.getPath()))) {
+            return true;
+          }
+        }
+        return false;
+      }
+    };
+  }
+
+  @Nullable
+  private org.sonar.api.resources.File sonarFile(String path) {
+    String normalizedPath = FilenameUtils.normalizeNoEndSeparator(new File(path).getAbsolutePath());
+    if (normalizedPath == null) {
+      return null;
+    }
+
+    File file = new File(normalizedPath);
+    File parent = file.getParentFile();
+    String relativeDir = parent == null ? null : relativeDir(parent);
+    if (relativeDir == null) {
+      return null;
+    }
+
+    return new org.sonar.api.resources.File(relativeDir.isEmpty() ? file.getName() : relativeDir + "/" + file.getName());
+  }
+
+  @Nullable
+  private String relativeDir(File dir) {
+    String key = key(dir.getPath());
+    if (relativeDirs.containsKey(key)) {
+      return relativeDirs.get(key);
+    }
+
+    String relativeDir;
+    if (sourceDirs().contains(key)) {
+      relativeDir = "";
+    } else {
+      File parent = dir.getParentFile();
+      String parentRelativeDir = parent == null ? null : relativeDir(parent);
+      if (parentRelativeDir == null) {
+        relativeDir = null;
+      } else {
+        relativeDir = parentRelativeDir.isEmpty() ? dir.getName() : parentRelativeDir + "/" + dir.getName();
+      }
+    }
+
+    relativeDirs.put(key, relativeDir);
+    return relativeDir;
+  }
+
+  private Set<String> sourceDirs() {
+    if (sourceDirs == null) {
+      sourceDirs = Sets.newHashSet();
+      for (File sourceDir : project.getFileSystem().getSourceDirs()) {
+        String normalizedPath = FilenameUtils.normalizeNoEndSeparator(sourceDir.getAbsolutePath());
+        if (normalizedPath != null) {
+          sourceDirs.add(key(normalizedPath));
+        }
+      }
+    }
+    return sourceDirs;
+  }
+
+  private static String key(String normalizedPath) {
+    return IOCase.SYSTEM.isCaseSensitive() ? normalizedPath : normalizedPath.toLowerCase(Locale.ENGLISH);
   }
 
 }
@@ -0,0 +1,94 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Format detection helper, which only reads the first bytes of a file.
+ */
+public final class HeaderSniffer {
+
+  private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+  private static final int MAX_LEADING_WHITESPACES = 1024;
+
+  private HeaderSniffer() {
+  }
+
+  /**
+   * Returns true if the file, once its UTF-8 byte order mark and leading whitespaces are skipped, starts with the given prefix.
+   */
+  public static boolean startsWith(File file, String prefix) {
+    byte[] expected = prefix.getBytes(Charsets.UTF_8);
+    byte[] header = readHeader(file, UTF8_BOM.length + MAX_LEADING_WHITESPACES + expected.length);
+
+    int offset = regionMatches(header, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+    while (offset < header.length && isWhitespace(header[offset])) {
+      offset++;
+    }
+
+    return regionMatches(header, offset, expected);
+  }
+
+  /**
+   * Returns at most the first maxBytes bytes of the file.
+   */
+  public static byte[] readHeader(File file, int maxBytes) {
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      byte[] header = new byte[maxBytes];
+      int length = ByteStreams.read(in, header, 0, maxBytes);
+      return length == maxBytes ? header : Arrays.copyOf(header, length);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  private static boolean regionMatches(byte[] bytes, int offset, byte[] expected) {
+    if (bytes.length - offset < expected.length) {
+      return false;
+    }
+
+    for (int i = 0; i < expected.length; i++) {
+      if (bytes[offset + i] != expected[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Table keyed by the integer ids of report elements, which are usually small and dense: those are stored in a growing array,
+ * so that a lookup neither hashes nor allocates anything, and the other ones in a map.
+ */
+class IdTable<V> {
+
+  private static final int MAX_DENSE_ID = 1 << 20;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Object[] dense = new Object[INITIAL_CAPACITY];
+  private final Map<Integer, V> sparse = Maps.newHashMap();
+
+  public void put(int id, V value) {
+    if (isDense(id)) {
+      if (id >= dense.length) {
+        dense = Arrays.copyOf(dense, Math.min(MAX_DENSE_ID, Math.max(id + 1, dense.length * 2)));
+      }
+      dense[id] = value;
+    } else {
+      sparse.put(id, value);
+    }
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(int id) {
+    if (isDense(id)) {
+      return id < dense.length ? (V) dense[id] : null;
+    }
+    return sparse.get(id);
+  }
+
+  private static boolean isDense(int id) {
+    return id >= 0 && id < MAX_DENSE_ID;
+  }
+
+}
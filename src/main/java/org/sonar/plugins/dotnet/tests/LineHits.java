@@ -0,0 +1,179 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hits of a single file, stored in an int array indexed by line number.
+ * Lines beyond {@link #MAX_DENSE_LINE}, such as hidden sequence points, are kept aside to bound the array size.
+ */
+class LineHits {
+
+  private static final int INITIAL_CAPACITY = 64;
+  static final int MAX_DENSE_LINE = 1 << 20;
+
+  private int[] hits = new int[INITIAL_CAPACITY];
+  private final BitSet lines = new BitSet(INITIAL_CAPACITY);
+  private int denseSize;
+  private Map<Integer, Integer> outliers;
+
+  public void add(int line, int hits) {
+    if (line >= 0 && line < MAX_DENSE_LINE) {
+      ensureCapacity(line + 1);
+
+      if (lines.get(line)) {
+        this.hits[line] += hits;
+      } else {
+        lines.set(line);
+        this.hits[line] = hits;
+        denseSize++;
+      }
+    } else {
+      addOutlier(line, hits);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > hits.length) {
+      int newCapacity = Math.min(Math.max(capacity, hits.length * 2), MAX_DENSE_LINE);
+      hits = Arrays.copyOf(hits, newCapacity);
+    }
+  }
+
+  private void addOutlier(int line, int hits) {
+    if (outliers == null) {
+      outliers = Maps.newTreeMap();
+    }
+
+    Integer oldHits = outliers.get(line);
+    outliers.put(line, oldHits == null ? hits : hits + oldHits);
+  }
+
+  public void addAll(LineHits other) {
+    for (int line = other.lines.nextSetBit(0); line >= 0; line = other.lines.nextSetBit(line + 1)) {
+      add(line, other.hits[line]);
+    }
+
+    if (other.outliers != null) {
+      for (Map.Entry<Integer, Integer> entry : other.outliers.entrySet()) {
+        addOutlier(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public int size() {
+    return denseSize + (outliers == null ? 0 : outliers.size());
+  }
+
+  public Map<Integer, Integer> asMap() {
+    return new MapView();
+  }
+
+  private class MapView extends AbstractMap<Integer, Integer> {
+
+    @Override
+    public int size() {
+      return LineHits.this.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Integer get(Object key) {
+      if (!(key instanceof Integer)) {
+        return null;
+      }
+
+      int line = (Integer) key;
+      if (line >= 0 && line < MAX_DENSE_LINE) {
+        return lines.get(line) ? hits[line] : null;
+      }
+
+      return outliers == null ? null : outliers.get(line);
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, Integer>> entrySet() {
+      return new AbstractSet<Map.Entry<Integer, Integer>>() {
+
+        @Override
+        public int size() {
+          return LineHits.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<Integer, Integer>> iterator() {
+          return new EntryIterator();
+        }
+
+      };
+    }
+
+  }
+
+  /**
+   * Iterates over the dense lines in ascending order, then over the outliers.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<Integer, Integer>> {
+
+    private int nextLine = lines.nextSetBit(0);
+    private final Iterator<Map.Entry<Integer, Integer>> outliersIterator = outliers == null ?
+      null : outliers.entrySet().iterator();
+
+    @Override
+    public boolean hasNext() {
+      return nextLine >= 0 || (outliersIterator != null && outliersIterator.hasNext());
+    }
+
+    @Override
+    public Map.Entry<Integer, Integer> next() {
+      if (nextLine >= 0) {
+        int line = nextLine;
+        nextLine = lines.nextSetBit(line + 1);
+        return Maps.immutableEntry(line, hits[line]);
+      } else if (outliersIterator != null) {
+        Map.Entry<Integer, Integer> entry = outliersIterator.next();
+        return Maps.immutableEntry(entry.getKey(), entry.getValue());
+      }
+
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+}
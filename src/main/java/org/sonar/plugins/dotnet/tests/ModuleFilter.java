@@ -0,0 +1,88 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Joiner;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.WildcardPattern;
+
+import javax.annotation.Nullable;
+
+/**
+ * Include and exclude patterns on the name and path of the modules (assemblies) of coverage reports.
+ * A module is kept when it matches at least one inclusion, if any, and no exclusion. Patterns follow the usual
+ * SonarQube wildcard syntax, backslashes of module paths being matched as slashes.
+ */
+public class ModuleFilter {
+
+  public static final String INCLUSIONS_PROPERTY_KEY = "sonar.dotnet.tests.modules.inclusions";
+  public static final String EXCLUSIONS_PROPERTY_KEY = "sonar.dotnet.tests.modules.exclusions";
+
+  private static final ModuleFilter ACCEPT_ALL = new ModuleFilter(new String[0], new String[0]);
+
+  private final String[] inclusions;
+  private final String[] exclusions;
+  private final WildcardPattern[] inclusionPatterns;
+  private final WildcardPattern[] exclusionPatterns;
+
+  public ModuleFilter(String[] inclusions, String[] exclusions) {
+    this.inclusions = inclusions.clone();
+    this.exclusions = exclusions.clone();
+    this.inclusionPatterns = WildcardPattern.create(inclusions);
+    this.exclusionPatterns = WildcardPattern.create(exclusions);
+  }
+
+  public static ModuleFilter acceptAll() {
+    return ACCEPT_ALL;
+  }
+
+  public static ModuleFilter fromSettings(Settings settings) {
+    return new ModuleFilter(stringArray(settings, INCLUSIONS_PROPERTY_KEY), stringArray(settings, EXCLUSIONS_PROPERTY_KEY));
+  }
+
+  private static String[] stringArray(Settings settings, String key) {
+    String[] values = settings.getStringArray(key);
+    return values == null ? new String[0] : values;
+  }
+
+  public boolean acceptsAll() {
+    return inclusionPatterns.length == 0 && exclusionPatterns.length == 0;
+  }
+
+  public boolean accepts(@Nullable String name, @Nullable String path) {
+    if (acceptsAll()) {
+      return true;
+    }
+
+    String normalizedPath = path == null ? null : path.replace('\\', '/');
+    boolean included = inclusionPatterns.length == 0 || matches(inclusionPatterns, name) || matches(inclusionPatterns, normalizedPath);
+    return included && !matches(exclusionPatterns, name) && !matches(exclusionPatterns, normalizedPath);
+  }
+
+  private static boolean matches(WildcardPattern[] patterns, @Nullable String value) {
+    return value != null && WildcardPattern.match(patterns, value);
+  }
+
+  @Override
+  public String toString() {
+    return "inclusions=" + Joiner.on(',').join(inclusions) + ";exclusions=" + Joiner.on(',').join(exclusions);
+  }
+
+}
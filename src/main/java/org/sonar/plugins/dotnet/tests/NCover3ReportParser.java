@@ -19,40 +19,58 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Map;
 
 public class NCover3ReportParser implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(NCover3ReportParser.class);
 
+  private final CanonicalPathCache canonicalPathCache;
+
+  public NCover3ReportParser() {
+    this(new CanonicalPathCache(false));
+  }
+
+  public NCover3ReportParser(CanonicalPathCache canonicalPathCache) {
+    this.canonicalPathCache = canonicalPathCache;
+  }
+
   @Override
   public void parse(File file, Coverage coverage) {
     LOG.info("Parsing the NCover3 report " + file.getAbsolutePath());
-    new Parser(file, coverage).parse();
+    new Parser(file, coverage, canonicalPathCache).parse();
   }
 
   private static class Parser {
 
+    private static final XmlParserHelper.Tags TAGS = XmlParserHelper.tags("doc", "seqpnt", "rebasedpaths", "filters");
+    private static final int DOC = 0;
+    private static final int SEQPNT = 1;
+    private static final int REBASED_PATHS = 2;
+    private static final int FILTERS = 3;
+
     private final File file;
     private XmlParserHelper xmlParserHelper;
-    private final Map<String, String> documents = Maps.newHashMap();
+    private XmlParserHelper.Attributes docAttributes;
+    private XmlParserHelper.Attributes segmentPointAttributes;
+    private final IdTable<String> documents = new IdTable<String>();
     private final Coverage coverage;
+    private final CanonicalPathCache canonicalPathCache;
 
-    public Parser(File file, Coverage coverage) {
+    public Parser(File file, Coverage coverage, CanonicalPathCache canonicalPathCache) {
       this.file = file;
       this.coverage = coverage;
+      this.canonicalPathCache = canonicalPathCache;
     }
 
     public void parse() {
       try {
         xmlParserHelper = new XmlParserHelper(file);
+        docAttributes = xmlParserHelper.attributes("id", "url");
+        segmentPointAttributes = xmlParserHelper.attributes("doc", "l", "vc");
         checkRootTag();
         dispatchTags();
       } finally {
@@ -65,38 +83,49 @@ public class NCover3ReportParser implements CoverageParser {
     private void dispatchTags() {
       String tagName;
       while ((tagName = xmlParserHelper.nextTag()) != null) {
-        if ("doc".equals(tagName)) {
-          handleDocTag();
-        } else if ("seqpnt".equals(tagName)) {
-          handleSegmentPointTag();
+        switch (TAGS.indexOf(tagName)) {
+          case DOC:
+            handleDocTag();
+            break;
+          case SEQPNT:
+            handleSegmentPointTag();
+            break;
+          case REBASED_PATHS:
+          case FILTERS:
+            xmlParserHelper.skipElement();
+            break;
+          default:
+            break;
         }
       }
     }
 
     private void handleDocTag() {
-      String id = xmlParserHelper.getRequiredAttribute("id");
-      String url = xmlParserHelper.getRequiredAttribute("url");
+      docAttributes.read();
+      int id = docAttributes.getRequiredInt("id");
+      String url = docAttributes.getRequired("url");
 
       if (!isExcludedId(id)) {
-        try {
-          documents.put(id, new File(url).getCanonicalPath());
-        } catch (IOException e) {
-          throw Throwables.propagate(e);
+        String canonicalPath = canonicalPathCache.canonicalPath(url);
+        if (coverage.accepts(canonicalPath)) {
+          documents.put(id, canonicalPath);
         }
       }
     }
 
-    private static boolean isExcludedId(String id) {
-      return "0".equals(id);
+    private static boolean isExcludedId(int id) {
+      return id == 0;
     }
 
     private void handleSegmentPointTag() {
-      String doc = xmlParserHelper.getRequiredAttribute("doc");
-      int line = xmlParserHelper.getRequiredIntAttribute("l");
-      int vc = xmlParserHelper.getRequiredIntAttribute("vc");
-
-      if (documents.containsKey(doc) && !isExcludedLine(line)) {
-        coverage.addHits(documents.get(doc), line, vc);
+      segmentPointAttributes.read();
+      int doc = segmentPointAttributes.getRequiredInt("doc");
+      int line = segmentPointAttributes.getRequiredInt("l");
+      int vc = segmentPointAttributes.getRequiredInt("vc");
+
+      String document = documents.get(doc);
+      if (document != null && !isExcludedLine(line)) {
+        coverage.addHits(document, line, vc);
       }
     }
 
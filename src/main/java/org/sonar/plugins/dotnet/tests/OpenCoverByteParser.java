@@ -0,0 +1,512 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Opt-in fast path of the {@link OpenCoverReportParser}, which scans the memory mapped UTF-8 bytes of the report
+ * for its &lt;File&gt;, &lt;FileRef&gt; and &lt;SequencePoint&gt; elements, and decodes their integer attributes straight
+ * from the bytes. Only the balance of the tags is checked: anything else it does not understand, such as a DOCTYPE,
+ * another encoding, a missing attribute or an unexpected value, makes it give up, so that the StAX parser takes over.
+ * The mapping is released as soon as the report is parsed, since it would otherwise keep the file locked on Windows
+ * until the buffer is garbage collected.
+ */
+class OpenCoverByteParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OpenCoverByteParser.class);
+
+  private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+  private static final int MAX_XML_DECLARATION_LENGTH = 1024;
+
+  private static final byte[] XML_DECLARATION_START = bytes("<?xml");
+  private static final byte[] PROCESSING_INSTRUCTION_END = bytes("?>");
+  private static final byte[] COMMENT_START = bytes("!--");
+  private static final byte[] COMMENT_END = bytes("-->");
+  private static final byte[] CDATA_START = bytes("![CDATA[");
+  private static final byte[] CDATA_END = bytes("]]>");
+
+  private static final byte[] COVERAGE_SESSION = bytes("CoverageSession");
+  private static final byte[][] TAGS = {bytes("File"), bytes("FileRef"), bytes("SequencePoint")};
+  private static final int OTHER = -1;
+  private static final int FILE = 0;
+  private static final int FILE_REF = 1;
+  private static final int SEQUENCE_POINT = 2;
+
+  private static final byte[][][] ATTRIBUTES = {
+    {bytes("uid"), bytes("fullPath")},
+    {bytes("uid")},
+    {bytes("sl"), bytes("vc")}
+  };
+  private static final int UID = 0;
+  private static final int FULL_PATH = 1;
+  private static final int SL = 0;
+  private static final int VC = 1;
+  private static final int MAX_ATTRIBUTES = 2;
+
+  private static final int NO_FILE_REF = Integer.MIN_VALUE;
+
+  private final File file;
+  private final Coverage coverage;
+  private final CanonicalPathCache canonicalPathCache;
+  private final IdTable<String> files = new IdTable<String>();
+  private final int[] valueStarts = new int[MAX_ATTRIBUTES];
+  private final int[] valueEnds = new int[MAX_ATTRIBUTES];
+  private ByteBuffer buffer;
+  private int limit;
+  private int position;
+  private int fileRef = NO_FILE_REF;
+
+  public OpenCoverByteParser(File file, Coverage coverage, CanonicalPathCache canonicalPathCache) {
+    this.file = file;
+    this.coverage = coverage;
+    this.canonicalPathCache = canonicalPathCache;
+  }
+
+  /**
+   * Returns false if the report could not be parsed, in which case the coverage may have been partially filled.
+   */
+  public boolean parse() {
+    try {
+      map();
+      checkEncoding();
+      scan();
+      return true;
+    } catch (IOException e) {
+      LOG.debug("Unable to map the OpenCover report " + file.getAbsolutePath() + ": " + e.getMessage());
+      return false;
+    } catch (UnsupportedContentException e) {
+      LOG.debug("Unsupported content at offset " + position + " of the OpenCover report " + file.getAbsolutePath() + ": " + e.getMessage());
+      return false;
+    } finally {
+      if (buffer != null) {
+        unmap(buffer);
+        buffer = null;
+      }
+    }
+  }
+
+  /**
+   * Best effort: relies on sun.misc.Unsafe.invokeCleaner() from Java 9 on, and on the cleaner of the buffer before.
+   * The mapping is otherwise released whenever the buffer is garbage collected.
+   */
+  private void unmap(ByteBuffer mappedBuffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        Method cleanerMethod = mappedBuffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(mappedBuffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), mappedBuffer);
+    } catch (Exception e) {
+      LOG.debug("Unable to unmap the OpenCover report " + file.getAbsolutePath() + ": " + e);
+    }
+  }
+
+  private void map() throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new UnsupportedContentException("too large to be mapped");
+      }
+      // The mapping remains valid once the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      limit = (int) size;
+    } finally {
+      Closeables.closeQuietly(randomAccessFile);
+    }
+  }
+
+  private void checkEncoding() {
+    if (matches(0, UTF8_BOM)) {
+      position = UTF8_BOM.length;
+    }
+
+    if (matches(position, XML_DECLARATION_START)) {
+      int end = indexOf(PROCESSING_INSTRUCTION_END, position);
+      if (end == -1 || end - position > MAX_XML_DECLARATION_LENGTH) {
+        throw new UnsupportedContentException("invalid XML declaration");
+      }
+      String declaration = string(position, end);
+      int encoding = declaration.indexOf("encoding");
+      if (encoding != -1) {
+        String value = declaration.substring(encoding + "encoding".length()).replaceAll("^\\s*=\\s*[\"']([^\"']*)[\"'].*$", "$1");
+        if (!"UTF-8".equalsIgnoreCase(value) && !"US-ASCII".equalsIgnoreCase(value)) {
+          throw new UnsupportedContentException("unsupported encoding " + value);
+        }
+      }
+    } else if (position < limit && buffer.get(position) != '<' && !isWhitespace(buffer.get(position))) {
+      // Such as UTF-16 byte order marks
+      throw new UnsupportedContentException("unsupported encoding");
+    }
+  }
+
+  private void scan() {
+    boolean foundRoot = false;
+    int depth = 0;
+
+    int tagStart;
+    while ((tagStart = indexOf((byte) '<', position)) != -1) {
+      position = tagStart + 1;
+      byte b = byteAt(position);
+      if (b == '?') {
+        skipPast(PROCESSING_INSTRUCTION_END);
+      } else if (b == '!') {
+        skipMarkupDeclaration(depth);
+      } else if (b == '/') {
+        skipPastEndTag();
+        depth--;
+        if (depth < 0) {
+          throw new UnsupportedContentException("unbalanced end tag");
+        }
+      } else {
+        int nameStart = position;
+        int nameEnd = skipName();
+        if (!foundRoot) {
+          if (!regionEquals(nameStart, nameEnd, COVERAGE_SESSION)) {
+            throw new UnsupportedContentException("unexpected root element");
+          }
+          foundRoot = true;
+        } else if (depth == 0) {
+          throw new UnsupportedContentException("several root elements");
+        }
+
+        int tag = tag(nameStart, nameEnd);
+        if (!readAttributes(tag)) {
+          depth++;
+        }
+        handleTag(tag);
+      }
+    }
+
+    if (!foundRoot || depth != 0) {
+      throw new UnsupportedContentException("unexpected end of file");
+    }
+  }
+
+  private void skipMarkupDeclaration(int depth) {
+    if (matches(position, COMMENT_START)) {
+      skipPast(COMMENT_END);
+    } else if (depth > 0 && matches(position, CDATA_START)) {
+      skipPast(CDATA_END);
+    } else {
+      throw new UnsupportedContentException("unsupported markup declaration");
+    }
+  }
+
+  private int skipName() {
+    while (!isNameEnd(byteAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private int tag(int nameStart, int nameEnd) {
+    for (int i = 0; i < TAGS.length; i++) {
+      if (regionEquals(nameStart, nameEnd, TAGS[i])) {
+        return i;
+      }
+    }
+    return OTHER;
+  }
+
+  /**
+   * Reads the attributes of the current start tag, and returns true if it is an empty element tag.
+   */
+  private boolean readAttributes(int tag) {
+    Arrays.fill(valueStarts, -1);
+
+    while (true) {
+      skipWhitespaces();
+      byte b = byteAt(position);
+      if (b == '>') {
+        position++;
+        return false;
+      } else if (b == '/') {
+        if (byteAt(position + 1) != '>') {
+          throw new UnsupportedContentException("invalid empty element tag");
+        }
+        position += 2;
+        return true;
+      }
+
+      int nameStart = position;
+      int nameEnd = skipAttributeName();
+      skipWhitespaces();
+      expect('=');
+      skipWhitespaces();
+      byte quote = byteAt(position);
+      if (quote != '"' && quote != '\'') {
+        throw new UnsupportedContentException("unquoted attribute value");
+      }
+      int valueStart = position + 1;
+      int valueEnd = indexOf(quote, valueStart);
+      if (valueEnd == -1) {
+        throw new UnsupportedContentException("unterminated attribute value");
+      }
+      position = valueEnd + 1;
+
+      if (tag != OTHER) {
+        recordAttribute(tag, nameStart, nameEnd, valueStart, valueEnd);
+      }
+    }
+  }
+
+  private int skipAttributeName() {
+    int nameStart = position;
+    byte b;
+    while ((b = byteAt(position)) != '=' && !isNameEnd(b)) {
+      position++;
+    }
+    if (position == nameStart) {
+      throw new UnsupportedContentException("invalid attribute");
+    }
+    return position;
+  }
+
+  private void recordAttribute(int tag, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+    byte[][] names = ATTRIBUTES[tag];
+    for (int i = 0; i < names.length; i++) {
+      if (valueStarts[i] == -1 && regionEquals(nameStart, nameEnd, names[i])) {
+        valueStarts[i] = valueStart;
+        valueEnds[i] = valueEnd;
+        return;
+      }
+    }
+  }
+
+  private void handleTag(int tag) {
+    switch (tag) {
+      case FILE:
+        handleFileTag();
+        break;
+      case FILE_REF:
+        fileRef = intValue(UID);
+        break;
+      case SEQUENCE_POINT:
+        handleSequencePointTag();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void handleFileTag() {
+    int uid = intValue(UID);
+    String canonicalPath = canonicalPathCache.canonicalPath(stringValue(FULL_PATH));
+    if (coverage.accepts(canonicalPath)) {
+      files.put(uid, canonicalPath);
+    }
+  }
+
+  private void handleSequencePointTag() {
+    int line = intValue(SL);
+    int vc = intValue(VC);
+
+    String canonicalPath = files.get(fileRef);
+    if (canonicalPath != null) {
+      coverage.addHits(canonicalPath, line, vc);
+    }
+  }
+
+  private int intValue(int attribute) {
+    int start = requiredValueStart(attribute);
+    int end = valueEnds[attribute];
+
+    boolean negative = start < end && buffer.get(start) == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end) {
+      throw new UnsupportedContentException("not an integer");
+    }
+
+    long value = 0;
+    for (; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        throw new UnsupportedContentException("not an integer");
+      }
+      value = value * 10 + b - '0';
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw new UnsupportedContentException("integer overflow");
+      }
+    }
+
+    value = negative ? -value : value;
+    if (value > Integer.MAX_VALUE) {
+      throw new UnsupportedContentException("integer overflow");
+    }
+    return (int) value;
+  }
+
+  private String stringValue(int attribute) {
+    int start = requiredValueStart(attribute);
+    int end = valueEnds[attribute];
+
+    for (int i = start; i < end; i++) {
+      byte b = buffer.get(i);
+      // Character references and attribute value normalization are left to the StAX parser
+      if (b == '&' || b == '\t' || b == '\n' || b == '\r') {
+        throw new UnsupportedContentException("unsupported attribute value");
+      }
+    }
+
+    return string(start, end);
+  }
+
+  private int requiredValueStart(int attribute) {
+    int start = valueStarts[attribute];
+    if (start == -1) {
+      throw new UnsupportedContentException("missing attribute");
+    }
+    return start;
+  }
+
+  private String string(int start, int end) {
+    byte[] value = new byte[end - start];
+    for (int i = 0; i < value.length; i++) {
+      value[i] = buffer.get(start + i);
+    }
+    return new String(value, Charsets.UTF_8);
+  }
+
+  private void skipPast(byte[] token) {
+    int start = indexOf(token, position);
+    if (start == -1) {
+      throw new UnsupportedContentException("unexpected end of file");
+    }
+    position = start + token.length;
+  }
+
+  private void skipPastEndTag() {
+    int end = indexOf((byte) '>', position);
+    if (end == -1) {
+      throw new UnsupportedContentException("unexpected end of file");
+    }
+    position = end + 1;
+  }
+
+  private void skipWhitespaces() {
+    while (isWhitespace(byteAt(position))) {
+      position++;
+    }
+  }
+
+  private void expect(char expected) {
+    if (byteAt(position) != expected) {
+      throw new UnsupportedContentException("expected '" + expected + "'");
+    }
+    position++;
+  }
+
+  private byte byteAt(int offset) {
+    if (offset >= limit) {
+      throw new UnsupportedContentException("unexpected end of file");
+    }
+    return buffer.get(offset);
+  }
+
+  private int indexOf(byte b, int from) {
+    for (int i = from; i < limit; i++) {
+      if (buffer.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int indexOf(byte[] token, int from) {
+    int last = limit - token.length;
+    for (int i = indexOf(token[0], from); i != -1 && i <= last; i = indexOf(token[0], i + 1)) {
+      if (matches(i, token)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean matches(int offset, byte[] expected) {
+    if (offset + expected.length > limit) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (buffer.get(offset + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean regionEquals(int start, int end, byte[] expected) {
+    return end - start == expected.length && matches(start, expected);
+  }
+
+  private static boolean isNameEnd(byte b) {
+    return b == '/' || b == '>' || isWhitespace(b);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(Charsets.UTF_8);
+  }
+
+  private static class UnsupportedContentException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedContentException(String message) {
+      super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      // Only used to give up on the fast path, the stack trace would never be read
+      return this;
+    }
+
+  }
+
+}
@@ -19,41 +19,106 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Map;
 
 public class OpenCoverReportParser implements CoverageParser {
 
+  /**
+   * Enables the {@link OpenCoverByteParser} fast path, when no module filter is set.
+   */
+  public static final String FAST_PARSING_PROPERTY_KEY = "sonar.dotnet.tests.openCover.fastParsing";
+
   private static final Logger LOG = LoggerFactory.getLogger(OpenCoverReportParser.class);
 
+  private final CanonicalPathCache canonicalPathCache;
+  private final ModuleFilter moduleFilter;
+  private final boolean fastParsing;
+
+  public OpenCoverReportParser() {
+    this(new CanonicalPathCache(false));
+  }
+
+  public OpenCoverReportParser(CanonicalPathCache canonicalPathCache) {
+    this(canonicalPathCache, ModuleFilter.acceptAll());
+  }
+
+  public OpenCoverReportParser(CanonicalPathCache canonicalPathCache, ModuleFilter moduleFilter) {
+    this(canonicalPathCache, moduleFilter, false);
+  }
+
+  public OpenCoverReportParser(CanonicalPathCache canonicalPathCache, ModuleFilter moduleFilter, boolean fastParsing) {
+    this.canonicalPathCache = canonicalPathCache;
+    this.moduleFilter = moduleFilter;
+    this.fastParsing = fastParsing;
+  }
+
   @Override
   public void parse(File file, Coverage coverage) {
     LOG.info("Parsing the OpenCover report " + file.getAbsolutePath());
-    new Parser(file, coverage).parse();
+
+    if (fastParsing && moduleFilter.acceptsAll()) {
+      // Parsed apart, so that nothing is left behind when falling back to the StAX parser
+      Coverage partialCoverage = new Coverage(coverage.fileFilter());
+      if (new OpenCoverByteParser(file, partialCoverage, canonicalPathCache).parse()) {
+        coverage.mergeWith(partialCoverage);
+        return;
+      }
+      LOG.debug("Falling back to the StAX parsing of the OpenCover report " + file.getAbsolutePath());
+    } else if (fastParsing) {
+      LOG.debug("Falling back to the StAX parsing of the OpenCover report " + file.getAbsolutePath() + ", which is the only one to support module filters");
+    }
+
+    new Parser(file, coverage, canonicalPathCache, moduleFilter).parse();
   }
 
   private static class Parser {
 
+    private static final int NO_FILE_REF = Integer.MIN_VALUE;
+
+    private static final XmlParserHelper.Tags TAGS = XmlParserHelper.tags(
+      "Module", "ModuleName", "FullName", "Files", "Classes", "File", "FileRef", "SequencePoint",
+      "Summary", "BranchPoints", "TrackedMethods", "MethodPoint");
+    private static final int MODULE = 0;
+    private static final int MODULE_NAME = 1;
+    private static final int FULL_NAME = 2;
+    private static final int FILES = 3;
+    private static final int CLASSES = 4;
+    private static final int FILE = 5;
+    private static final int FILE_REF = 6;
+    private static final int SEQUENCE_POINT = 7;
+    private static final int SUMMARY = 8;
+    private static final int BRANCH_POINTS = 9;
+    private static final int TRACKED_METHODS = 10;
+    private static final int METHOD_POINT = 11;
+
     private final File file;
     private XmlParserHelper xmlParserHelper;
-    private final Map<String, String> files = Maps.newHashMap();
+    private XmlParserHelper.Attributes fileAttributes;
+    private XmlParserHelper.Attributes sequencePointAttributes;
+    private final IdTable<String> files = new IdTable<String>();
     private final Coverage coverage;
-    private String fileRef;
-
-    public Parser(File file, Coverage coverage) {
+    private final CanonicalPathCache canonicalPathCache;
+    private final ModuleFilter moduleFilter;
+    private int fileRef = NO_FILE_REF;
+    private String moduleName;
+    private String moduleFullName;
+    private boolean moduleChecked = true;
+
+    public Parser(File file, Coverage coverage, CanonicalPathCache canonicalPathCache, ModuleFilter moduleFilter) {
       this.file = file;
       this.coverage = coverage;
+      this.canonicalPathCache = canonicalPathCache;
+      this.moduleFilter = moduleFilter;
     }
 
     public void parse() {
       try {
         xmlParserHelper = new XmlParserHelper(file);
+        fileAttributes = xmlParserHelper.attributes("uid", "fullPath");
+        sequencePointAttributes = xmlParserHelper.attributes("sl", "vc");
         xmlParserHelper.checkRootTag("CoverageSession");
         dispatchTags();
       } finally {
@@ -66,37 +131,97 @@ public class OpenCoverReportParser implements CoverageParser {
     private void dispatchTags() {
       String tagName;
       while ((tagName = xmlParserHelper.nextTag()) != null) {
-        if ("File".equals(tagName)) {
-          handleFileTag();
-        } else if ("FileRef".equals(tagName)) {
-          handleFileRef();
-        } else if ("SequencePoint".equals(tagName)) {
-          handleSegmentPointTag();
+        int tag = TAGS.indexOf(tagName);
+        switch (tag) {
+          case MODULE:
+            handleModuleTag();
+            break;
+          case MODULE_NAME:
+          case FULL_NAME:
+            if (!moduleChecked) {
+              handleModuleNameTag(tag);
+            }
+            break;
+          case FILES:
+          case CLASSES:
+            if (!moduleChecked) {
+              checkModule();
+            }
+            break;
+          case FILE:
+            handleFileTag();
+            break;
+          case FILE_REF:
+            handleFileRef();
+            break;
+          case SEQUENCE_POINT:
+            handleSegmentPointTag();
+            break;
+          case SUMMARY:
+          case BRANCH_POINTS:
+          case TRACKED_METHODS:
+          case METHOD_POINT:
+            // Summaries, branch points and tracked methods may be large, and are never read
+            xmlParserHelper.skipElement();
+            break;
+          default:
+            break;
         }
       }
     }
 
+    private void handleModuleTag() {
+      moduleName = null;
+      moduleFullName = null;
+      moduleChecked = moduleFilter.acceptsAll();
+    }
+
+    /**
+     * The module name and path are given by its first child elements: the module is checked once both are known,
+     * or at the latest before its files and classes.
+     */
+    private void handleModuleNameTag(int tag) {
+      if (tag == MODULE_NAME) {
+        moduleName = xmlParserHelper.getElementText();
+      } else {
+        moduleFullName = xmlParserHelper.getElementText();
+      }
+
+      if (moduleName != null && moduleFullName != null) {
+        checkModule();
+      }
+    }
+
+    private void checkModule() {
+      moduleChecked = true;
+      if (!moduleFilter.accepts(moduleName, moduleFullName)) {
+        xmlParserHelper.skipToEndOfParent();
+      }
+    }
+
     private void handleFileRef() {
-      this.fileRef = xmlParserHelper.getRequiredAttribute("uid");
+      this.fileRef = xmlParserHelper.getRequiredIntAttribute("uid");
     }
 
     private void handleFileTag() {
-      String uid = xmlParserHelper.getRequiredAttribute("uid");
-      String fullPath = xmlParserHelper.getRequiredAttribute("fullPath");
+      fileAttributes.read();
+      int uid = fileAttributes.getRequiredInt("uid");
+      String fullPath = fileAttributes.getRequired("fullPath");
 
-      try {
-        files.put(uid, new File(fullPath).getCanonicalPath());
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
+      String canonicalPath = canonicalPathCache.canonicalPath(fullPath);
+      if (coverage.accepts(canonicalPath)) {
+        files.put(uid, canonicalPath);
       }
     }
 
     private void handleSegmentPointTag() {
-      int line = xmlParserHelper.getRequiredIntAttribute("sl");
-      int vc = xmlParserHelper.getRequiredIntAttribute("vc");
+      sequencePointAttributes.read();
+      int line = sequencePointAttributes.getRequiredInt("sl");
+      int vc = sequencePointAttributes.getRequiredInt("vc");
 
-      if (files.containsKey(fileRef)) {
-        coverage.addHits(files.get(fileRef), line, vc);
+      String canonicalPath = files.get(fileRef);
+      if (canonicalPath != null) {
+        coverage.addHits(canonicalPath, line, vc);
       }
     }
 
@@ -0,0 +1,118 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.sonar.api.config.Settings;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs report parsing tasks on a bounded thread pool, and returns their results in submission order.
+ * Tasks submitted from a parsing thread, such as the dotCover files of a report which is itself parsed in parallel,
+ * run in that thread, so that the number of threads never exceeds the configured one.
+ */
+public final class ParallelParsing {
+
+  public static final String THREADS_PROPERTY_KEY = "sonar.dotnet.tests.parsingThreads";
+
+  private static final ThreadLocal<Boolean> PARSING_THREAD = new ThreadLocal<Boolean>();
+
+  private ParallelParsing() {
+  }
+
+  public static int threads(Settings settings) {
+    return Math.max(1, settings.getInt(THREADS_PROPERTY_KEY));
+  }
+
+  public static <T> List<T> invokeAll(int threads, List<? extends Callable<T>> tasks) {
+    if (threads <= 1 || tasks.size() <= 1 || isParsingThread()) {
+      return invokeAllInCurrentThread(tasks);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(threads, tasks.size()),
+      new ThreadFactoryBuilder().setNameFormat("dotnet-tests-parser-%d").setDaemon(true).setThreadFactory(new ParsingThreadFactory()).build());
+
+    try {
+      List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(getResult(future));
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean isParsingThread() {
+    return PARSING_THREAD.get() != null;
+  }
+
+  private static <T> List<T> invokeAllInCurrentThread(List<? extends Callable<T>> tasks) {
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    for (Callable<T> task : tasks) {
+      try {
+        results.add(task.call());
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    return results;
+  }
+
+  private static <T> T getResult(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      // Rethrow the parser exception as is, so that it still points to the faulty report
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static class ParsingThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      return delegate.newThread(new Runnable() {
+        @Override
+        public void run() {
+          PARSING_THREAD.set(Boolean.TRUE);
+          runnable.run();
+        }
+      });
+    }
+
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Batch-wide cache of the parsed reports, so that a report shared by several modules is only parsed once per analysis.
+ * Reports are keyed by parser, parser configuration, canonical path, size and last modification date, and each one is parsed at most once
+ * even when requested concurrently. Failures are not cached. The cached results must not be modified: callers merge
+ * them into their own {@link Coverage} or {@link UnitTestResults}.
+ * Whole aggregations are cached as well, keyed by the list of their reports: the reports they are made of are parsed
+ * without going through the per report entries, so that no coverage is held twice.
+ * It also holds the canonical path caches of the batch, which are shared by all the parsers and released along with it.
+ * Plugins must register this class as an extension for the aggregators to share it.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class ParsedReportCache implements BatchExtension {
+
+  private final ConcurrentMap<Object, Future<Object>> parsedReports = Maps.newConcurrentMap();
+  private final CanonicalPathCache fileSystemCanonicalPathCache = new CanonicalPathCache(false);
+  private final CanonicalPathCache lexicalCanonicalPathCache = new CanonicalPathCache(true);
+
+  public CanonicalPathCache canonicalPathCache(boolean lexicalOnly) {
+    return lexicalOnly ? lexicalCanonicalPathCache : fileSystemCanonicalPathCache;
+  }
+
+  public Coverage coverage(CoverageParser parser, File report) {
+    return coverage(parser, "", report);
+  }
+
+  /**
+   * The configuration, such as module filters, is part of the key since it changes the outcome of the parser.
+   */
+  public Coverage coverage(final CoverageParser parser, String configuration, final File report) {
+    return get(new Key(parserClass(parser), configuration, report), Coverage.class, new Callable<Object>() {
+      @Override
+      public Object call() {
+        Coverage coverage = new Coverage();
+        parser.parse(report, coverage);
+        return coverage;
+      }
+    });
+  }
+
+  public UnitTestResults unitTestResults(VisualStudioTestResultsFileParser parser, File report) {
+    return unitTestResults(parser, "", report);
+  }
+
+  public UnitTestResults unitTestResults(final VisualStudioTestResultsFileParser parser, String configuration, final File report) {
+    return get(new Key(parser.getClass(), configuration, report), UnitTestResults.class, new Callable<Object>() {
+      @Override
+      public Object call() {
+        UnitTestResults unitTestResults = new UnitTestResults();
+        parser.parse(report, unitTestResults);
+        return unitTestResults;
+      }
+    });
+  }
+
+  /**
+   * Returns the coverage of the given reports, aggregated at most once per batch, so that the sensors of all the
+   * languages and modules configured with the very same reports and parser configuration share a single result.
+   * The aggregation must therefore not filter files: callers filter the shared result instead.
+   */
+  public Coverage aggregatedCoverage(List<Map.Entry<CoverageParser, File>> reports, String configuration, final Callable<Coverage> aggregation) {
+    List<Key> keys = Lists.newArrayListWithCapacity(reports.size());
+    for (Map.Entry<CoverageParser, File> report : reports) {
+      keys.add(new Key(parserClass(report.getKey()), configuration, report.getValue()));
+    }
+
+    return get(ImmutableList.copyOf(keys), Coverage.class, new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return aggregation.call();
+      }
+    });
+  }
+
+  private static Class<?> parserClass(CoverageParser parser) {
+    return parser instanceof PersistentReportCache.CachedCoverageParser ? ((PersistentReportCache.CachedCoverageParser) parser).parser().getClass() : parser.getClass();
+  }
+
+  public int size() {
+    return parsedReports.size();
+  }
+
+  /**
+   * Releases all the parsed reports, called once the batch is over.
+   */
+  public void stop() {
+    parsedReports.clear();
+    fileSystemCanonicalPathCache.clear();
+    lexicalCanonicalPathCache.clear();
+  }
+
+  private <T> T get(Object key, Class<T> type, Callable<Object> parsing) {
+    Future<Object> future = parsedReports.get(key);
+    if (future == null) {
+      FutureTask<Object> task = new FutureTask<Object>(parsing);
+      future = parsedReports.putIfAbsent(key, task);
+      if (future == null) {
+        future = task;
+        task.run();
+      }
+    }
+
+    try {
+      return type.cast(future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      parsedReports.remove(key, future);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private static class Key {
+
+    private final Class<?> parserClass;
+    private final String configuration;
+    private final String canonicalPath;
+    private final long size;
+    private final long lastModified;
+
+    public Key(Class<?> parserClass, String configuration, File report) {
+      this.parserClass = parserClass;
+      this.configuration = configuration;
+      this.canonicalPath = canonicalPath(report);
+      this.size = report.length();
+      this.lastModified = report.lastModified();
+    }
+
+    private static String canonicalPath(File file) {
+      try {
+        return file.getCanonicalPath();
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return parserClass.equals(other.parserClass) && configuration.equals(other.configuration) && canonicalPath.equals(other.canonicalPath)
+        && size == other.size && lastModified == other.lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(parserClass, configuration, canonicalPath, size, lastModified);
+    }
+
+  }
+
+}
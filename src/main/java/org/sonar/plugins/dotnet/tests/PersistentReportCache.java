@@ -0,0 +1,328 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * On-disk cache of parsed coverage reports, shared by successive and concurrent analyses.
+ * Entries are {@link CoverageSnapshot}s keyed by a SHA-1 hash of the parser, its configuration, the library and snapshot format
+ * versions, the working directory against which relative paths of the report are resolved, and the report content,
+ * read on the heap and written to a temporary file
+ * which is then renamed, so that readers never see a partial entry. Entries are touched on each hit,
+ * and the least recently used ones are evicted under an exclusive file lock once the cache exceeds its maximum size.
+ * An entry which cannot be read is treated as a miss.
+ * Only suitable for self-contained reports: the dotCover HTML index refers to other files and is never cached.
+ */
+public class PersistentReportCache {
+
+  public static final String DIRECTORY_PROPERTY_KEY = "sonar.dotnet.tests.reportCache.directory";
+  public static final String MAXIMUM_SIZE_PROPERTY_KEY = "sonar.dotnet.tests.reportCache.maximumSizeInMB";
+
+  private static final Logger LOG = LoggerFactory.getLogger(PersistentReportCache.class);
+
+  private static final long DEFAULT_MAXIMUM_SIZE_IN_MB = 512;
+  private static final String ENTRY_SUFFIX = ".coverage";
+  private static final String LOCK_FILE_NAME = ".lock";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String POM_PROPERTIES = "/META-INF/maven/org.codehaus.sonar.dotnet.tests/sonar-dotnet-tests-library/pom.properties";
+
+  /**
+   * Part of the keys, so that the entries written by a previous version of the parsers are never read again.
+   */
+  @VisibleForTesting
+  static final String VERSION = libraryVersion() + "/" + CoverageSnapshot.VERSION;
+
+  private final File directory;
+  private final long maximumSize;
+
+  public PersistentReportCache(File directory, long maximumSize) {
+    this.directory = directory;
+    this.maximumSize = maximumSize;
+  }
+
+  @Nullable
+  public static PersistentReportCache fromSettings(Settings settings) {
+    String directory = settings.getString(DIRECTORY_PROPERTY_KEY);
+    if (directory == null || directory.isEmpty()) {
+      return null;
+    }
+
+    long maximumSizeInMB = settings.hasKey(MAXIMUM_SIZE_PROPERTY_KEY) ? settings.getLong(MAXIMUM_SIZE_PROPERTY_KEY) : DEFAULT_MAXIMUM_SIZE_IN_MB;
+    return new PersistentReportCache(new File(directory), maximumSizeInMB * 1024 * 1024);
+  }
+
+  public CoverageParser cached(CoverageParser parser) {
+    return cached(parser, "");
+  }
+
+  /**
+   * The configuration, such as module filters, is part of the key of the entries since it changes the outcome of the parser.
+   */
+  public CoverageParser cached(CoverageParser parser, String configuration) {
+    return new CachedCoverageParser(this, parser, configuration);
+  }
+
+  public Coverage coverage(CoverageParser parser, File report) {
+    return coverage(parser, "", report);
+  }
+
+  public Coverage coverage(CoverageParser parser, String configuration, File report) {
+    File entry = new File(directory, key(parser, configuration, report) + ENTRY_SUFFIX);
+
+    Coverage coverage = read(entry);
+    if (coverage != null) {
+      LOG.debug("Reusing the cached coverage of " + report.getAbsolutePath());
+      return coverage;
+    }
+
+    coverage = new Coverage();
+    parser.parse(report, coverage);
+    write(entry, coverage);
+    return coverage;
+  }
+
+  @VisibleForTesting
+  static String key(CoverageParser parser, File report) {
+    return key(parser, "", report);
+  }
+
+  @VisibleForTesting
+  static String key(CoverageParser parser, String configuration, File report) {
+    return key(VERSION, workingDirectory(), parser, configuration, report);
+  }
+
+  @VisibleForTesting
+  static String key(String version, String workingDirectory, CoverageParser parser, String configuration, File report) {
+    MessageDigest digest = sha1();
+    digest.update(version.getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(workingDirectory.getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(parser.getClass().getName().getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(configuration.getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+
+    InputStream input = null;
+    try {
+      input = new FileInputStream(report);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Parsers resolve the relative paths of reports against the working directory, which therefore changes their outcome.
+   */
+  private static String workingDirectory() {
+    try {
+      return new File("").getCanonicalPath();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * The version of this library, as recorded by Maven in its jar, or "unknown" when run from the classes directory.
+   */
+  private static String libraryVersion() {
+    InputStream input = PersistentReportCache.class.getResourceAsStream(POM_PROPERTIES);
+    if (input == null) {
+      return "unknown";
+    }
+
+    try {
+      Properties properties = new Properties();
+      properties.load(input);
+      return properties.getProperty("version", "unknown");
+    } catch (IOException e) {
+      return "unknown";
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Nullable
+  private static Coverage read(File entry) {
+    if (!entry.isFile()) {
+      return null;
+    }
+
+    try {
+      Coverage coverage = CoverageSnapshot.load(entry).mergeInto(new Coverage());
+      entry.setLastModified(System.currentTimeMillis());
+      return coverage;
+    } catch (RuntimeException e) {
+      LOG.debug("Ignoring the unreadable cache entry " + entry.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  private void write(File entry, Coverage coverage) {
+    File temporaryFile = null;
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+        throw new IOException("Unable to create the report cache directory " + directory.getAbsolutePath());
+      }
+
+      temporaryFile = File.createTempFile(entry.getName(), ".tmp", directory);
+      CoverageSnapshot.write(coverage, temporaryFile);
+      // Another analysis may have stored the very same entry meanwhile, in which case keeping either one is fine
+      if (!temporaryFile.renameTo(entry) && !entry.isFile()) {
+        throw new IOException("Unable to rename " + temporaryFile.getAbsolutePath() + " to " + entry.getAbsolutePath());
+      }
+
+      evict();
+    } catch (IOException e) {
+      LOG.warn("Unable to store the coverage report in the cache: " + e.getMessage());
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to store the coverage report in the cache: " + e.getMessage());
+    } finally {
+      if (temporaryFile != null && temporaryFile.exists() && !temporaryFile.delete()) {
+        temporaryFile.deleteOnExit();
+      }
+    }
+  }
+
+  private void evict() throws IOException {
+    RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+    try {
+      FileLock lock = lockFile.getChannel().lock();
+      try {
+        evictLeastRecentlyUsedEntries();
+      } finally {
+        lock.release();
+      }
+    } finally {
+      Closeables.closeQuietly(lockFile);
+    }
+  }
+
+  private void evictLeastRecentlyUsedEntries() {
+    File[] entries = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && file.getName().endsWith(ENTRY_SUFFIX);
+      }
+    });
+    if (entries == null) {
+      return;
+    }
+
+    long size = 0;
+    for (File entry : entries) {
+      size += entry.length();
+    }
+    if (size <= maximumSize) {
+      return;
+    }
+
+    List<File> sortedEntries = Lists.newArrayList(entries);
+    Collections.sort(sortedEntries, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long lastModifiedA = a.lastModified();
+        long lastModifiedB = b.lastModified();
+        return lastModifiedA < lastModifiedB ? -1 : (lastModifiedA == lastModifiedB ? 0 : 1);
+      }
+    });
+
+    for (File entry : sortedEntries) {
+      if (size <= maximumSize) {
+        break;
+      }
+      long length = entry.length();
+      if (entry.delete()) {
+        size -= length;
+      } else {
+        LOG.warn("Unable to evict the cache entry " + entry.getAbsolutePath());
+      }
+    }
+  }
+
+  static class CachedCoverageParser implements CoverageParser {
+
+    private final PersistentReportCache cache;
+    private final CoverageParser parser;
+    private final String configuration;
+
+    CachedCoverageParser(PersistentReportCache cache, CoverageParser parser, String configuration) {
+      this.cache = cache;
+      this.parser = parser;
+      this.configuration = configuration;
+    }
+
+    CoverageParser parser() {
+      return parser;
+    }
+
+    @Override
+    public void parse(File file, Coverage coverage) {
+      coverage.mergeWith(cache.coverage(parser, configuration, file));
+    }
+
+  }
+
+}
@@ -26,6 +26,8 @@ public class UnitTestResults {
   private int skipped;
   private int failed;
   private int errors;
+  private long executionTime;
+  private boolean hasExecutionTime;
 
   public void add(int tests, int passed, int skipped, int failed, int errors) {
     this.tests += tests;
@@ -35,6 +37,21 @@ public class UnitTestResults {
     this.errors += errors;
   }
 
+  public void add(UnitTestResults other) {
+    add(other.tests, other.passed, other.skipped, other.failed, other.errors);
+    if (other.hasExecutionTime) {
+      addExecutionTime(other.executionTime);
+    }
+  }
+
+  /**
+   * Adds the given execution time, in milliseconds.
+   */
+  public void addExecutionTime(long executionTime) {
+    this.executionTime += executionTime;
+    this.hasExecutionTime = true;
+  }
+
   public double tests() {
     return tests;
   }
@@ -55,4 +72,15 @@ public class UnitTestResults {
     return errors;
   }
 
+  /**
+   * Whether the execution time was part of the parsed results.
+   */
+  public boolean hasExecutionTime() {
+    return hasExecutionTime;
+  }
+
+  public double executionTime() {
+    return executionTime;
+  }
+
 }
@@ -21,27 +21,48 @@ package org.sonar.plugins.dotnet.tests;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.config.Settings;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 public class UnitTestResultsAggregator implements BatchExtension {
 
   private final UnitTestConfiguration unitTestConf;
   private final Settings settings;
   private final VisualStudioTestResultsFileParser visualStudioTestResultsFileParser;
+  private final ParsedReportCache parsedReportCache;
 
   public UnitTestResultsAggregator(UnitTestConfiguration unitTestConf, Settings settings) {
-    this(unitTestConf, settings, new VisualStudioTestResultsFileParser());
+    this(unitTestConf, settings, newVisualStudioTestResultsFileParser(settings));
+  }
+
+  public UnitTestResultsAggregator(UnitTestConfiguration unitTestConf, Settings settings, ParsedReportCache parsedReportCache) {
+    this(unitTestConf, settings, newVisualStudioTestResultsFileParser(settings), parsedReportCache);
   }
 
   @VisibleForTesting
   public UnitTestResultsAggregator(UnitTestConfiguration unitTestConf, Settings settings,
     VisualStudioTestResultsFileParser visualStudioTestResultsFileParser) {
+    this(unitTestConf, settings, visualStudioTestResultsFileParser, null);
+  }
+
+  @VisibleForTesting
+  public UnitTestResultsAggregator(UnitTestConfiguration unitTestConf, Settings settings,
+    VisualStudioTestResultsFileParser visualStudioTestResultsFileParser, @Nullable ParsedReportCache parsedReportCache) {
     this.unitTestConf = unitTestConf;
     this.settings = settings;
     this.visualStudioTestResultsFileParser = visualStudioTestResultsFileParser;
+    this.parsedReportCache = parsedReportCache;
+  }
+
+  private static VisualStudioTestResultsFileParser newVisualStudioTestResultsFileParser(Settings settings) {
+    return new VisualStudioTestResultsFileParser(!settings.getBoolean(VisualStudioTestResultsFileParser.SUMMARY_ONLY_PROPERTY_KEY));
   }
 
   public boolean hasUnitTestResultsProperty() {
@@ -60,10 +81,66 @@ public class UnitTestResultsAggregator implements BatchExtension {
     return unitTestResults;
   }
 
-  private static void aggregate(String reportPaths, VisualStudioTestResultsFileParser parser, UnitTestResults unitTestResults) {
+  private void aggregate(String reportPaths, VisualStudioTestResultsFileParser parser, UnitTestResults unitTestResults) {
+    List<ReportParsing> reportParsings = Lists.newArrayList();
     for (String reportPath : Splitter.on(',').trimResults().omitEmptyStrings().split(reportPaths)) {
-      parser.parse(new File(reportPath), unitTestResults);
+      reportParsings.add(new ReportParsing(parser, new File(reportPath), parsedReportCache, parserConfiguration(settings)));
+    }
+
+    int threads = ParallelParsing.threads(settings);
+    if (threads <= 1) {
+      for (ReportParsing reportParsing : reportParsings) {
+        reportParsing.parseInto(unitTestResults);
+      }
+    } else {
+      // Each report is parsed into its own partial results, added in the sequential order
+      for (UnitTestResults partialResults : ParallelParsing.invokeAll(threads, reportParsings)) {
+        unitTestResults.add(partialResults);
+      }
     }
   }
 
+  /**
+   * The settings of the parser, which key its cached results: the execution time is not read in summary only mode.
+   */
+  @VisibleForTesting
+  static String parserConfiguration(Settings settings) {
+    return "summaryOnly=" + settings.getBoolean(VisualStudioTestResultsFileParser.SUMMARY_ONLY_PROPERTY_KEY);
+  }
+
+  private static class ReportParsing implements Callable<UnitTestResults> {
+
+    private final VisualStudioTestResultsFileParser parser;
+    private final File report;
+    private final ParsedReportCache parsedReportCache;
+    private final String parserConfiguration;
+
+    public ReportParsing(VisualStudioTestResultsFileParser parser, File report, @Nullable ParsedReportCache parsedReportCache, String parserConfiguration) {
+      this.parser = parser;
+      this.report = report;
+      this.parsedReportCache = parsedReportCache;
+      this.parserConfiguration = parserConfiguration;
+    }
+
+    public void parseInto(UnitTestResults unitTestResults) {
+      if (parsedReportCache == null) {
+        parser.parse(report, unitTestResults);
+      } else {
+        unitTestResults.add(parsedReportCache.unitTestResults(parser, parserConfiguration, report));
+      }
+    }
+
+    @Override
+    public UnitTestResults call() {
+      if (parsedReportCache != null) {
+        return parsedReportCache.unitTestResults(parser, parserConfiguration, report);
+      }
+
+      UnitTestResults partialResults = new UnitTestResults();
+      parser.parse(report, partialResults);
+      return partialResults;
+    }
+
+  }
+
 }
@@ -52,6 +52,9 @@ public class UnitTestResultsImportSensor implements Sensor {
     context.saveMeasure(CoreMetrics.TEST_ERRORS, unitTestResults.errors());
     context.saveMeasure(CoreMetrics.TEST_FAILURES, unitTestResults.failed());
     context.saveMeasure(CoreMetrics.SKIPPED_TESTS, unitTestResults.skipped());
+    if (unitTestResults.hasExecutionTime()) {
+      context.saveMeasure(CoreMetrics.TEST_EXECUTION_TIME, unitTestResults.executionTime());
+    }
   }
 
 }
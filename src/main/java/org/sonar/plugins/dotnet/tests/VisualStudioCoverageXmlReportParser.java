@@ -19,41 +19,77 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
-import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
 
 public class VisualStudioCoverageXmlReportParser implements CoverageParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(VisualStudioCoverageXmlReportParser.class);
 
+  private final CanonicalPathCache canonicalPathCache;
+  private final ModuleFilter moduleFilter;
+
+  public VisualStudioCoverageXmlReportParser() {
+    this(new CanonicalPathCache(false));
+  }
+
+  public VisualStudioCoverageXmlReportParser(CanonicalPathCache canonicalPathCache) {
+    this(canonicalPathCache, ModuleFilter.acceptAll());
+  }
+
+  public VisualStudioCoverageXmlReportParser(CanonicalPathCache canonicalPathCache, ModuleFilter moduleFilter) {
+    this.canonicalPathCache = canonicalPathCache;
+    this.moduleFilter = moduleFilter;
+  }
+
   @Override
   public void parse(File file, Coverage coverage) {
     LOG.info("Parsing the Visual Studio coverage XML report " + file.getAbsolutePath());
-    new Parser(file, coverage).parse();
+    new Parser(file, coverage, canonicalPathCache, moduleFilter).parse();
   }
 
   private static class Parser {
 
+    private static final XmlParserHelper.Tags TAGS = XmlParserHelper.tags("module", "range", "source_file", "skipped_modules");
+    private static final int MODULE = 0;
+    private static final int RANGE = 1;
+    private static final int SOURCE_FILE = 2;
+    private static final int SKIPPED_MODULES = 3;
+
     private final File file;
     private XmlParserHelper xmlParserHelper;
-    private final Multimap<Integer, Integer> coveredLines = HashMultimap.create();
-    private final Multimap<Integer, Integer> uncoveredLines = HashMultimap.create();
+    private XmlParserHelper.Attributes rangeAttributes;
+    private XmlParserHelper.Attributes sourceFileAttributes;
+    private XmlParserHelper.Attributes moduleAttributes;
+    private final IdTable<Lines> coveredLines = new IdTable<Lines>();
+    private final IdTable<Lines> uncoveredLines = new IdTable<Lines>();
+    private final List<Lines> modifiedLines = Lists.newArrayList();
     private final Coverage coverage;
+    private final CanonicalPathCache canonicalPathCache;
+    private final ModuleFilter moduleFilter;
 
-    public Parser(File file, Coverage coverage) {
+    public Parser(File file, Coverage coverage, CanonicalPathCache canonicalPathCache, ModuleFilter moduleFilter) {
       this.file = file;
       this.coverage = coverage;
+      this.canonicalPathCache = canonicalPathCache;
+      this.moduleFilter = moduleFilter;
     }
 
     public void parse() {
       try {
         xmlParserHelper = new XmlParserHelper(file);
+        rangeAttributes = xmlParserHelper.attributes("source_id", "covered", "start_line");
+        sourceFileAttributes = xmlParserHelper.attributes("id", "path");
+        moduleAttributes = xmlParserHelper.attributes("name", "path");
         checkRootTag();
         dispatchTags();
       } finally {
@@ -66,53 +102,90 @@ public class VisualStudioCoverageXmlReportParser implements CoverageParser {
     private void dispatchTags() {
       String tagName;
       while ((tagName = xmlParserHelper.nextTag()) != null) {
-        if ("module".equals(tagName)) {
-          handleModuleTag();
-        } else if ("range".equals(tagName)) {
-          handleRangeTag();
-        } else if ("source_file".equals(tagName)) {
-          handleSourceFileTag();
+        switch (TAGS.indexOf(tagName)) {
+          case MODULE:
+            handleModuleTag();
+            break;
+          case RANGE:
+            handleRangeTag();
+            break;
+          case SOURCE_FILE:
+            handleSourceFileTag();
+            break;
+          case SKIPPED_MODULES:
+            xmlParserHelper.skipElement();
+            break;
+          default:
+            break;
         }
       }
     }
 
     private void handleModuleTag() {
-      coveredLines.clear();
-      uncoveredLines.clear();
+      // The line sets are reused by the next modules, only the ones modified by the previous module are cleared
+      for (Lines lines : modifiedLines) {
+        lines.clear();
+      }
+      modifiedLines.clear();
+
+      if (!moduleFilter.acceptsAll()) {
+        moduleAttributes.read();
+        if (!moduleFilter.accepts(moduleAttributes.get("name"), moduleAttributes.get("path"))) {
+          xmlParserHelper.skipElement();
+        }
+      }
     }
 
     private void handleRangeTag() {
-      int source = xmlParserHelper.getRequiredIntAttribute("source_id");
-      String covered = xmlParserHelper.getRequiredAttribute("covered");
-
-      int line = xmlParserHelper.getRequiredIntAttribute("start_line");
+      rangeAttributes.read();
+      int source = rangeAttributes.getRequiredInt("source_id");
+      String covered = rangeAttributes.getRequired("covered");
 
+      int line = rangeAttributes.getRequiredInt("start_line");
       if ("yes".equals(covered)) {
-        coveredLines.put(source, line);
+        addLine(coveredLines, source, line);
       } else if ("no".equals(covered)) {
-        uncoveredLines.put(source, line);
+        addLine(uncoveredLines, source, line);
       } else {
         throw xmlParserHelper.parseError("Unsupported \"covered\" value \"" + covered + "\", expected either \"yes\" or \"no\"");
       }
     }
 
+    private void addLine(IdTable<Lines> linesBySource, int source, int line) {
+      Lines lines = linesBySource.get(source);
+      if (lines == null) {
+        lines = new Lines();
+        linesBySource.put(source, lines);
+      }
+      if (lines.isEmpty()) {
+        modifiedLines.add(lines);
+      }
+      lines.add(line);
+    }
+
     private void handleSourceFileTag() {
-      int id = xmlParserHelper.getRequiredIntAttribute("id");
-      String path = xmlParserHelper.getRequiredAttribute("path");
+      sourceFileAttributes.read();
+      int id = sourceFileAttributes.getRequiredInt("id");
+      String path = sourceFileAttributes.getRequired("path");
 
-      String canonicalPath;
-      try {
-        canonicalPath = new File(path).getCanonicalPath();
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
+      String canonicalPath = canonicalPathCache.canonicalPath(path);
+      if (!coverage.accepts(canonicalPath)) {
+        return;
       }
 
-      for (Integer line : coveredLines.get(id)) {
-        coverage.addHits(canonicalPath, line, 1);
-      }
+      addHits(canonicalPath, coveredLines.get(id), 1);
+      addHits(canonicalPath, uncoveredLines.get(id), 0);
+    }
 
-      for (Integer line : uncoveredLines.get(id)) {
-        coverage.addHits(canonicalPath, line, 0);
+    private void addHits(String canonicalPath, @Nullable Lines lines, int hits) {
+      if (lines == null) {
+        return;
+      }
+      for (int line = lines.denseLines.nextSetBit(0); line >= 0; line = lines.denseLines.nextSetBit(line + 1)) {
+        coverage.addHits(canonicalPath, line, hits);
+      }
+      for (int line : lines.outliers) {
+        coverage.addHits(canonicalPath, line, hits);
       }
     }
 
@@ -122,4 +195,32 @@ public class VisualStudioCoverageXmlReportParser implements CoverageParser {
 
   }
 
+  /**
+   * Lines of a source, set in a bit set from 0 up to {@link LineHits#MAX_DENSE_LINE} and kept aside otherwise,
+   * so that a single huge line number does not allocate a huge bit set, and negative ones are imported as before.
+   */
+  private static class Lines {
+
+    private final BitSet denseLines = new BitSet();
+    private final Set<Integer> outliers = Sets.newTreeSet();
+
+    public void add(int line) {
+      if (line >= 0 && line < LineHits.MAX_DENSE_LINE) {
+        denseLines.set(line);
+      } else {
+        outliers.add(line);
+      }
+    }
+
+    public boolean isEmpty() {
+      return denseLines.isEmpty() && outliers.isEmpty();
+    }
+
+    public void clear() {
+      denseLines.clear();
+      outliers.clear();
+    }
+
+  }
+
 }
@@ -19,40 +19,142 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 public class VisualStudioTestResultsFileParser {
 
+  /**
+   * When set, only the counters are read, usually from the tail of the file, and the execution time is unknown.
+   */
+  public static final String SUMMARY_ONLY_PROPERTY_KEY = "sonar.dotnet.tests.testResults.summaryOnly";
+
   private static final Logger LOG = LoggerFactory.getLogger(VisualStudioTestResultsFileParser.class);
 
+  private static final long TICKS_PER_SECOND = 10000000L;
+  private static final long TICKS_PER_MILLISECOND = 10000L;
+  private static final int FRACTION_DIGITS = 7;
+
+  private final boolean readExecutionTime;
+
+  public VisualStudioTestResultsFileParser() {
+    this(true);
+  }
+
+  public VisualStudioTestResultsFileParser(boolean readExecutionTime) {
+    this.readExecutionTime = readExecutionTime;
+  }
+
   public void parse(File file, UnitTestResults unitTestResults) {
     LOG.info("Parsing the Visual Studio Test Results file " + file.getAbsolutePath());
-    new Parser(file, unitTestResults).parse();
+    new Parser(file, unitTestResults, readExecutionTime).parse();
+  }
+
+  /**
+   * Parses a "[d.]hh:mm:ss[.fffffff]" duration into ticks of 100 nanoseconds, or returns -1 if it is not valid.
+   * Fractions finer than a tick are truncated.
+   */
+  @VisibleForTesting
+  static long durationTicks(String duration) {
+    String[] parts = duration.split(":", -1);
+    if (parts.length != 3) {
+      return -1;
+    }
+
+    try {
+      long hours;
+      int daysSeparator = parts[0].indexOf('.');
+      if (daysSeparator == -1) {
+        hours = parseNonNegative(parts[0]);
+      } else {
+        hours = parseNonNegative(parts[0].substring(0, daysSeparator)) * 24 + parseNonNegative(parts[0].substring(daysSeparator + 1));
+      }
+      long minutes = parseNonNegative(parts[1]);
+
+      String seconds = parts[2];
+      long fractionTicks = 0;
+      int fractionSeparator = seconds.indexOf('.');
+      if (fractionSeparator != -1) {
+        String fraction = seconds.substring(fractionSeparator + 1);
+        if (fraction.isEmpty()) {
+          return -1;
+        }
+        parseNonNegative(fraction);
+        if (fraction.length() > FRACTION_DIGITS) {
+          fraction = fraction.substring(0, FRACTION_DIGITS);
+        }
+        fractionTicks = parseNonNegative(fraction);
+        for (int i = fraction.length(); i < FRACTION_DIGITS; i++) {
+          fractionTicks *= 10;
+        }
+        seconds = seconds.substring(0, fractionSeparator);
+      }
+
+      return ((hours * 60 + minutes) * 60 + parseNonNegative(seconds)) * TICKS_PER_SECOND + fractionTicks;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static long parseNonNegative(String value) {
+    if (value.isEmpty() || !Character.isDigit(value.charAt(0))) {
+      throw new NumberFormatException(value);
+    }
+    return Long.parseLong(value);
   }
 
   private static class Parser {
 
+    private static final XmlParserHelper.Tags TAGS = XmlParserHelper.tags("ResultSummary", "Results", "Counters");
+    private static final int RESULT_SUMMARY = 0;
+    private static final int RESULTS = 1;
+    private static final int COUNTERS = 2;
+
     private final File file;
     private XmlParserHelper xmlParserHelper;
+    private XmlParserHelper.Attributes testResultAttributes;
     private final UnitTestResults unitTestResults;
+    private final boolean readExecutionTime;
 
     private boolean foundCounters;
+    private long executionTicks;
+    private boolean foundDuration;
 
-    public Parser(File file, UnitTestResults unitTestResults) {
+    public Parser(File file, UnitTestResults unitTestResults, boolean readExecutionTime) {
       this.file = file;
       this.unitTestResults = unitTestResults;
+      this.readExecutionTime = readExecutionTime;
     }
 
     public void parse() {
+      // The execution time is the sum of the durations of all the test results, which cannot be read from the tail only
+      if (!readExecutionTime && parseResultSummaryRegion()) {
+        return;
+      }
+
       try {
         xmlParserHelper = new XmlParserHelper(file);
+        testResultAttributes = xmlParserHelper.attributes("duration");
         checkRootTag();
         dispatchTags();
         Preconditions.checkArgument(foundCounters, "The mandatory <Counters> tag is missing in " + file.getAbsolutePath());
+        // A report without any supported duration has no execution time, rather than a null one
+        if (foundDuration) {
+          unitTestResults.addExecutionTime(executionTicks / TICKS_PER_MILLISECOND);
+        }
       } finally {
         if (xmlParserHelper != null) {
           xmlParserHelper.close();
@@ -60,26 +162,105 @@ public class VisualStudioTestResultsFileParser {
       }
     }
 
+    /**
+     * Fast path for the usual layout, where the result summary is the last child of the root element: only the head and
+     * the tail of the file are read. Returns false, without having modified the results, whenever the layout is unexpected.
+     */
+    private boolean parseResultSummaryRegion() {
+      try {
+        byte[] region = ResultSummaryRegion.find(file);
+        if (region == null) {
+          return false;
+        }
+
+        UnitTestResults regionResults = new UnitTestResults();
+        try {
+          xmlParserHelper = new XmlParserHelper(file, new ByteArrayInputStream(region));
+          xmlParserHelper.checkRootTag("ResultSummary");
+          handleResultSummaryTag(regionResults);
+        } finally {
+          xmlParserHelper.close();
+          xmlParserHelper = null;
+        }
+
+        if (!foundCounters) {
+          return false;
+        }
+        unitTestResults.add(regionResults);
+        return true;
+      } catch (RuntimeException e) {
+        LOG.debug("Falling back to the parsing of the whole file " + file.getAbsolutePath(), e);
+        foundCounters = false;
+        return false;
+      }
+    }
+
+    /**
+     * Only descends into the result summary and, when needed, into the results: test definitions are skipped,
+     * and so are the possibly huge outputs and inner results of each test result.
+     */
     private void dispatchTags() {
-      String tagName;
-      while ((tagName = xmlParserHelper.nextTag()) != null) {
-        if ("Counters".equals(tagName)) {
-          handleCountersTag();
+      String tagName = xmlParserHelper.nextChildTag();
+      while (tagName != null) {
+        int tag = TAGS.indexOf(tagName);
+        if (tag == RESULT_SUMMARY) {
+          handleResultSummaryTag(unitTestResults);
+        } else if (tag == RESULTS && readExecutionTime) {
+          handleResultsTag();
         }
+        tagName = xmlParserHelper.nextSiblingTag();
+      }
+    }
+
+    /**
+     * Each child is a test result, such as &lt;UnitTestResult&gt;, whose duration already includes the one of its inner results.
+     */
+    private void handleResultsTag() {
+      String tagName = xmlParserHelper.nextChildTag();
+      while (tagName != null) {
+        handleTestResultTag();
+        tagName = xmlParserHelper.nextSiblingTag();
       }
     }
 
-    private void handleCountersTag() {
+    private void handleTestResultTag() {
+      String duration = testResultAttributes.read().get("duration");
+      if (duration == null) {
+        return;
+      }
+
+      long ticks = durationTicks(duration);
+      if (ticks == -1) {
+        // The execution time is optional, so an unknown format must not prevent the import of the counters
+        LOG.debug("Ignoring the unsupported duration \"" + duration + "\" of a test result in " + file.getAbsolutePath());
+        return;
+      }
+      executionTicks += ticks;
+      foundDuration = true;
+    }
+
+    private void handleResultSummaryTag(UnitTestResults results) {
+      String tagName = xmlParserHelper.nextChildTag();
+      while (tagName != null) {
+        if (TAGS.indexOf(tagName) == COUNTERS) {
+          handleCountersTag(results);
+        }
+        tagName = xmlParserHelper.nextSiblingTag();
+      }
+    }
+
+    private void handleCountersTag(UnitTestResults results) {
       foundCounters = true;
-      int errors = xmlParserHelper.getRequiredIntAttribute("error");
-      int failed = xmlParserHelper.getRequiredIntAttribute("failed");
-      int timeout = xmlParserHelper.getRequiredIntAttribute("timeout");
-      int aborted = xmlParserHelper.getRequiredIntAttribute("aborted");
-      int inconclusive = xmlParserHelper.getRequiredIntAttribute("inconclusive");
-      int total = xmlParserHelper.getRequiredIntAttribute("total");
-      int passed = xmlParserHelper.getRequiredIntAttribute("passed");
+      XmlParserHelper.Attributes attributes = xmlParserHelper.attributes("error", "failed", "timeout", "aborted", "inconclusive", "total", "passed").read();
+      int errors = attributes.getRequiredInt("error");
+      int failed = attributes.getRequiredInt("failed");
+      int timeout = attributes.getRequiredInt("timeout");
+      int aborted = attributes.getRequiredInt("aborted");
+      int inconclusive = attributes.getRequiredInt("inconclusive");
+      int total = attributes.getRequiredInt("total");
+      int passed = attributes.getRequiredInt("passed");
 
-      unitTestResults.add(total, passed, aborted + inconclusive, timeout + failed, errors);
+      results.add(total, passed, aborted + inconclusive, timeout + failed, errors);
     }
 
     private void checkRootTag() {
@@ -88,4 +269,115 @@ public class VisualStudioTestResultsFileParser {
 
   }
 
+  /**
+   * Locates the "&lt;ResultSummary&gt;...&lt;/ResultSummary&gt;" element closing a UTF-8 TRX file, by reading its tail only.
+   */
+  static final class ResultSummaryRegion {
+
+    static final int TAIL_SIZE = 256 * 1024;
+
+    private static final byte[] START = "<ResultSummary".getBytes(Charsets.UTF_8);
+    private static final byte[] END = "</ResultSummary>".getBytes(Charsets.UTF_8);
+    private static final byte[] ROOT_END = "</TestRun>".getBytes(Charsets.UTF_8);
+
+    private ResultSummaryRegion() {
+    }
+
+    /**
+     * Returns the bytes of the region, or null if the file is not a UTF-8 "TestRun" document ending with its result summary.
+     */
+    @Nullable
+    static byte[] find(File file) {
+      if (!isUtf8TestRun(file)) {
+        return null;
+      }
+
+      byte[] tail = readTail(file);
+      int rootEndTag = matchBackwards(tail, skipWhitespacesBackwards(tail, tail.length), ROOT_END);
+      int summaryEndTag = matchBackwards(tail, skipWhitespacesBackwards(tail, rootEndTag), END);
+      if (summaryEndTag == -1) {
+        return null;
+      }
+
+      int start = lastStartBefore(tail, summaryEndTag);
+      return start == -1 ? null : Arrays.copyOfRange(tail, start, summaryEndTag + END.length);
+    }
+
+    private static boolean isUtf8TestRun(File file) {
+      XmlParserHelper xmlParserHelper = new XmlParserHelper(file);
+      try {
+        xmlParserHelper.checkRootTag("TestRun");
+        String encoding = xmlParserHelper.stream().getEncoding();
+        return "UTF-8".equalsIgnoreCase(encoding) || "US-ASCII".equalsIgnoreCase(encoding);
+      } finally {
+        xmlParserHelper.close();
+      }
+    }
+
+    private static byte[] readTail(File file) {
+      RandomAccessFile randomAccessFile = null;
+      try {
+        randomAccessFile = new RandomAccessFile(file, "r");
+        long length = randomAccessFile.length();
+        byte[] tail = new byte[(int) Math.min(length, TAIL_SIZE)];
+        randomAccessFile.seek(length - tail.length);
+        randomAccessFile.readFully(tail);
+        return tail;
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      } finally {
+        Closeables.closeQuietly(randomAccessFile);
+      }
+    }
+
+    /**
+     * Returns the offset of the given token, which must end right at the given offset, or -1.
+     */
+    private static int matchBackwards(byte[] bytes, int end, byte[] token) {
+      int start = end - token.length;
+      if (end == -1 || start < 0 || !regionMatches(bytes, start, token)) {
+        return -1;
+      }
+      return start;
+    }
+
+    private static int skipWhitespacesBackwards(byte[] bytes, int end) {
+      if (end == -1) {
+        return -1;
+      }
+      int result = end;
+      while (result > 0 && isWhitespace(bytes[result - 1])) {
+        result--;
+      }
+      return result;
+    }
+
+    private static int lastStartBefore(byte[] bytes, int end) {
+      for (int start = end - START.length - 1; start >= 0; start--) {
+        if (regionMatches(bytes, start, START) && isNameEnd(bytes[start + START.length])) {
+          return start;
+        }
+      }
+      return -1;
+    }
+
+    private static boolean regionMatches(byte[] bytes, int offset, byte[] expected) {
+      for (int i = 0; i < expected.length; i++) {
+        if (bytes[offset + i] != expected[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isNameEnd(byte b) {
+      return b == '>' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+  }
+
 }
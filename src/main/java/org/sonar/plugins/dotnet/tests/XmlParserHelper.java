@@ -19,9 +19,12 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.io.Closeables;
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+import org.codehaus.stax2.typed.TypedXMLStreamReader;
 
 import javax.annotation.Nullable;
 import javax.xml.stream.XMLInputFactory;
@@ -29,31 +32,71 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
 
 public class XmlParserHelper {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Configured once and never modified afterwards, so that it can safely create readers from several threads.
+   */
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
   private final File file;
-  private final InputStreamReader reader;
+  private final InputStream inputStream;
   private final XMLStreamReader stream;
 
   public XmlParserHelper(File file) {
+    this(file, open(file));
+  }
+
+  /**
+   * Parses the given stream, for instance a region of the file only, which is closed along with this helper.
+   */
+  public XmlParserHelper(File file, InputStream inputStream) {
+    this.file = file;
+    this.inputStream = inputStream;
+
     try {
-      this.file = file;
-      this.reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
-      XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
-      this.stream = xmlFactory.createXMLStreamReader(reader);
+      // Let the parser detect the encoding from the bytes
+      this.stream = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    } catch (XMLStreamException e) {
+      Closeables.closeQuietly(inputStream);
+      throw Throwables.propagate(e);
+    }
+  }
 
+  private static InputStream open(File file) {
+    try {
+      return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
     } catch (FileNotFoundException e) {
       throw Throwables.propagate(e);
-    } catch (XMLStreamException e) {
-      throw Throwables.propagate(e);
     }
   }
 
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+    xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    xmlFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    if (xmlFactory.isPropertySupported(XMLInputFactory2.P_LAZY_PARSING)) {
+      // Skipped elements and ignored text are then scanned, but never decoded
+      xmlFactory.setProperty(XMLInputFactory2.P_LAZY_PARSING, true);
+    }
+    if (xmlFactory.isPropertySupported(XMLInputFactory2.P_INTERN_NAMES)) {
+      // Element names are then usually compared by reference with the literals of the parsers
+      xmlFactory.setProperty(XMLInputFactory2.P_INTERN_NAMES, true);
+    }
+    return xmlFactory;
+  }
+
   public void checkRootTag(String name) {
     int event;
 
@@ -83,6 +126,102 @@ public class XmlParserHelper {
     }
   }
 
+  /**
+   * Reads the text content of the current element, and moves to its end.
+   */
+  public String getElementText() {
+    try {
+      return stream.getElementText();
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Skips the whole subtree of the current element, without reporting any of its events.
+   */
+  public void skipElement() {
+    try {
+      if (stream instanceof XMLStreamReader2) {
+        ((XMLStreamReader2) stream).skipElement();
+      } else {
+        skipOpenElements(1);
+      }
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Moves to the first child element of the current element, and returns its name.
+   * Returns null, the reader being on the end of the current element, when there is no such child.
+   */
+  @Nullable
+  public String nextChildTag() {
+    try {
+      return nextTagBeforeEndOfParent();
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Skips the subtree of the current element, if not done yet, and moves to the next sibling element, returning its name.
+   * Returns null, the reader being on the end of the parent element, when there is no such sibling.
+   */
+  @Nullable
+  public String nextSiblingTag() {
+    try {
+      if (stream.getEventType() == XMLStreamConstants.START_ELEMENT) {
+        skipElement();
+      }
+      return nextTagBeforeEndOfParent();
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Nullable
+  private String nextTagBeforeEndOfParent() throws XMLStreamException {
+    // Neither text nor comments are ever requested, so that the lazy parser does not materialize them
+    while (stream.hasNext()) {
+      int event = stream.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return stream.getLocalName();
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        return null;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Skips the remaining content of the parent of the current element, up to the parent end.
+   */
+  public void skipToEndOfParent() {
+    try {
+      skipOpenElements(stream.getEventType() == XMLStreamConstants.START_ELEMENT ? 2 : 1);
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Moves forward until the given number of currently open elements have been closed.
+   */
+  private void skipOpenElements(int openElements) throws XMLStreamException {
+    int depth = openElements;
+    while (depth > 0 && stream.hasNext()) {
+      int event = stream.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
   public void checkRequiredAttribute(String name, int expectedValue) {
     int actualValue = getRequiredIntAttribute(name);
     if (expectedValue != actualValue) {
@@ -91,33 +230,214 @@ public class XmlParserHelper {
   }
 
   public int getRequiredIntAttribute(String name) {
-    String value = getRequiredAttribute(name);
+    return getRequiredIntAttribute(name, requiredAttributeIndex(name));
+  }
+
+  public String getRequiredAttribute(String name) {
+    return stream.getAttributeValue(requiredAttributeIndex(name));
+  }
+
+  @Nullable
+  public String getAttribute(String name) {
+    int index = attributeIndex(name);
+    return index == -1 ? null : stream.getAttributeValue(index);
+  }
 
+  private int attributeIndex(String name) {
+    for (int i = 0; i < stream.getAttributeCount(); i++) {
+      if (name.equals(stream.getAttributeLocalName(i))) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private int requiredAttributeIndex(String name) {
+    int index = attributeIndex(name);
+    if (index == -1) {
+      throw missingAttribute(name);
+    }
+
+    return index;
+  }
+
+  private ParseErrorException missingAttribute(String name) {
+    return parseError("Missing attribute \"" + name + "\" in element <" + stream.getLocalName() + ">");
+  }
+
+  private int getRequiredIntAttribute(String name, int index) {
+    if (stream instanceof TypedXMLStreamReader) {
+      // Decoded straight from the parser buffer, without creating an intermediate String
+      try {
+        return ((TypedXMLStreamReader) stream).getAttributeAsInt(index);
+      } catch (TypedXMLStreamException e) {
+        throw notAnInteger(name, e.getLexical());
+      } catch (XMLStreamException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    String value = stream.getAttributeValue(index);
     try {
       return Integer.parseInt(value);
     } catch (NumberFormatException e) {
-      throw parseError("Expected an integer instead of \"" + value + "\" for the attribute \"" + name + "\"");
+      throw notAnInteger(name, value);
     }
   }
 
-  public String getRequiredAttribute(String name) {
-    String value = getAttribute(name);
-    if (value == null) {
-      throw parseError("Missing attribute \"" + name + "\" in element <" + stream.getLocalName() + ">");
+  private ParseErrorException notAnInteger(String name, String value) {
+    return parseError("Expected an integer instead of \"" + value + "\" for the attribute \"" + name + "\"");
+  }
+
+  /**
+   * Returns a reusable holder, which resolves all the given attributes of the current element in a single pass.
+   */
+  public Attributes attributes(String... names) {
+    return new Attributes(names);
+  }
+
+  public class Attributes {
+
+    private final String[] names;
+    private final int[] indexes;
+
+    private Attributes(String... names) {
+      this.names = names;
+      this.indexes = new int[names.length];
+    }
+
+    public Attributes read() {
+      Arrays.fill(indexes, -1);
+
+      int count = stream.getAttributeCount();
+      for (int i = 0; i < count; i++) {
+        int position = position(stream.getAttributeLocalName(i));
+        if (position != -1 && indexes[position] == -1) {
+          indexes[position] = i;
+        }
+      }
+
+      return this;
+    }
+
+    public int getRequiredInt(String name) {
+      return getRequiredIntAttribute(name, requiredIndex(name));
+    }
+
+    public String getRequired(String name) {
+      return stream.getAttributeValue(requiredIndex(name));
+    }
+
+    @Nullable
+    public String get(String name) {
+      int index = indexes[checkedPosition(name)];
+      return index == -1 ? null : stream.getAttributeValue(index);
+    }
+
+    private int requiredIndex(String name) {
+      int index = indexes[checkedPosition(name)];
+      if (index == -1) {
+        throw missingAttribute(name);
+      }
+
+      return index;
+    }
+
+    private int checkedPosition(String name) {
+      int position = position(name);
+      if (position == -1) {
+        throw new IllegalArgumentException("The attribute \"" + name + "\" was not requested");
+      }
+      return position;
+    }
+
+    private int position(String name) {
+      // Names are usually the very same interned literals, so compare references first
+      for (int i = 0; i < names.length; i++) {
+        if (names[i] == name) {
+          return i;
+        }
+      }
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals(name)) {
+          return i;
+        }
+      }
+
+      return -1;
     }
 
-    return value;
   }
 
-  @Nullable
-  public String getAttribute(String name) {
-    for (int i = 0; i < stream.getAttributeCount(); i++) {
-      if (name.equals(stream.getAttributeLocalName(i))) {
-        return stream.getAttributeValue(i);
+  /**
+   * Returns an immutable table of the given element names, which can be shared by all the parsers of a format.
+   */
+  public static Tags tags(String... names) {
+    return new Tags(names);
+  }
+
+  /**
+   * Resolves the index of an element name in constant time, through a perfect hash table of the registered names.
+   * An element name which is not registered mostly costs an array access and a reference comparison.
+   */
+  public static final class Tags {
+
+    public static final int UNKNOWN = -1;
+
+    private static final int MAX_TABLE_SIZE = 1 << 12;
+
+    private final String[] names;
+    private final int[] indexes;
+    private final int mask;
+
+    private Tags(String... names) {
+      int size = tableSize(names);
+      this.names = new String[size];
+      this.indexes = new int[size];
+      this.mask = size - 1;
+
+      for (int i = 0; i < names.length; i++) {
+        int slot = names[i].hashCode() & mask;
+        this.names[slot] = names[i];
+        this.indexes[slot] = i;
       }
     }
 
-    return null;
+    private static int tableSize(String[] names) {
+      for (int size = Integer.highestOneBit(Math.max(1, names.length)) << 2; size <= MAX_TABLE_SIZE; size <<= 1) {
+        if (isPerfect(names, size - 1)) {
+          return size;
+        }
+      }
+
+      throw new IllegalArgumentException("Unable to build a perfect hash table for the element names " + Arrays.toString(names));
+    }
+
+    private static boolean isPerfect(String[] names, int mask) {
+      boolean[] used = new boolean[mask + 1];
+      for (String name : names) {
+        int slot = name.hashCode() & mask;
+        if (used[slot]) {
+          return false;
+        }
+        used[slot] = true;
+      }
+      return true;
+    }
+
+    /**
+     * Returns the index of the given name in the registered ones, or {@link #UNKNOWN}.
+     */
+    public int indexOf(String name) {
+      int slot = name.hashCode() & mask;
+      String candidate = names[slot];
+      if (candidate == name) {
+        return indexes[slot];
+      }
+      return candidate != null && candidate.equals(name) ? indexes[slot] : UNKNOWN;
+    }
+
   }
 
   public ParseErrorException parseError(String message) {
@@ -125,7 +445,7 @@ public class XmlParserHelper {
   }
 
   public void close() {
-    Closeables.closeQuietly(reader);
+    Closeables.closeQuietly(inputStream);
 
     if (stream != null) {
       try {
@@ -0,0 +1,86 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CanonicalPathCacheTest {
+
+  @Test
+  public void canonical_path() throws Exception {
+    CanonicalPathCache cache = new CanonicalPathCache(10, false);
+
+    assertThat(cache.canonicalPath("src/../src/./Foo.cs")).isEqualTo(new File("src/Foo.cs").getCanonicalPath());
+    assertThat(cache.canonicalPath("src/../src/./Foo.cs")).isEqualTo(new File("src/Foo.cs").getCanonicalPath());
+    assertThat(cache.canonicalPath("Bar.cs")).isEqualTo(new File("Bar.cs").getCanonicalPath());
+
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(2);
+    assertThat(cache.toString()).isEqualTo("canonical path cache: 1 hits, 2 misses");
+  }
+
+  @Test
+  public void lexical_path() {
+    CanonicalPathCache cache = new CanonicalPathCache(10, true);
+    String separator = File.separator;
+    String currentDirectory = new File("").getAbsolutePath();
+
+    assertThat(cache.canonicalPath("src/../src/./Foo.cs".replace("/", separator)))
+      .isEqualTo(currentDirectory + separator + "src" + separator + "Foo.cs");
+    assertThat(cache.canonicalPath("a//b/../../..".replace("/", separator)))
+      .isEqualTo(new File(currentDirectory).getParentFile().getAbsolutePath());
+    assertThat(CanonicalPathCache.lexicallyNormalizedPath(separator + ".." + separator + "..")).isEqualTo(new File(separator).getAbsolutePath());
+  }
+
+  @Test
+  public void bounded() {
+    CanonicalPathCache cache = new CanonicalPathCache(1, true);
+    cache.canonicalPath("Foo.cs");
+    cache.canonicalPath("Bar.cs");
+    cache.canonicalPath("Foo.cs");
+
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void unc_path() {
+    assertThat(CanonicalPathCache.lexicallyNormalizedPath("\\\\server\\share\\src\\.\\..\\Foo.cs", '\\')).isEqualTo("\\\\server\\share\\Foo.cs");
+    assertThat(CanonicalPathCache.lexicallyNormalizedPath("\\\\server\\share\\..\\..\\Foo.cs", '\\')).isEqualTo("\\\\server\\share\\Foo.cs");
+    assertThat(CanonicalPathCache.lexicallyNormalizedPath("C:\\src\\..\\Foo.cs", '\\')).isEqualTo("C:\\Foo.cs");
+    assertThat(CanonicalPathCache.lexicallyNormalizedPath("/src//../Foo.cs", '/')).isEqualTo("/Foo.cs");
+  }
+
+  @Test
+  public void clear() {
+    CanonicalPathCache cache = new CanonicalPathCache(true);
+    cache.canonicalPath("Foo.cs");
+    cache.clear();
+    cache.canonicalPath("Foo.cs");
+
+    assertThat(cache.hitCount()).isEqualTo(0);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+}
@@ -19,6 +19,8 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -171,4 +173,166 @@ public class CoverageAggregatorTest {
     verify(visualStudioCoverageXmlReportParser).parse(new File("qux.coveragexml"), coverage);
   }
 
+  @Test
+  public void aggregate_in_parallel() {
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("ncover")).thenReturn(true);
+    when(settings.getString("ncover")).thenReturn("src/test/resources/ncover3/valid.nccov");
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml,src/test/resources/opencover/valid.xml");
+    when(settings.hasKey("dotcover")).thenReturn(false);
+    when(settings.hasKey("visualstudio")).thenReturn(true);
+    when(settings.getString("visualstudio")).thenReturn("src/test/resources/visualstudio_coverage_xml/valid.coveragexml");
+
+    Coverage sequentialCoverage = new CoverageAggregator(coverageConf, settings).aggregate(new Coverage());
+
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    Coverage parallelCoverage = new CoverageAggregator(coverageConf, settings).aggregate(new Coverage());
+
+    assertThat(parallelCoverage.files()).isNotEmpty();
+    assertThat(Lists.newArrayList(parallelCoverage.files())).isEqualTo(Lists.newArrayList(sequentialCoverage.files()));
+    for (String file : sequentialCoverage.files()) {
+      assertThat(Lists.newArrayList(parallelCoverage.hits(file).entrySet())).isEqualTo(Lists.newArrayList(sequentialCoverage.hits(file).entrySet()));
+    }
+  }
+
+  @Test
+  public void aggregate_in_parallel_reports_the_faulty_report() {
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml,src/test/resources/opencover/wrong_start_line.xml");
+
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("wrong_start_line.xml at line 27");
+    new CoverageAggregator(coverageConf, settings).aggregate(new Coverage());
+  }
+
+  @Test
+  public void aggregate_with_parsed_report_cache() {
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml");
+
+    OpenCoverReportParser openCoverReportParser = mock(OpenCoverReportParser.class);
+    ParsedReportCache parsedReportCache = new ParsedReportCache();
+    CoverageAggregator aggregator = new CoverageAggregator(coverageConf, settings,
+      mock(NCover3ReportParser.class), openCoverReportParser, mock(DotCoverReportsAggregator.class), mock(VisualStudioCoverageXmlReportParser.class),
+      parsedReportCache);
+
+    aggregator.aggregate(new Coverage());
+    aggregator.aggregate(new Coverage());
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    aggregator.aggregate(new Coverage());
+    verify(openCoverReportParser).parse(Mockito.eq(new File("src/test/resources/opencover/valid.xml")), Mockito.any(Coverage.class));
+    // Only the aggregation is cached, not the report it is made of
+    assertThat(parsedReportCache.size()).isEqualTo(1);
+
+    parsedReportCache.stop();
+    assertThat(parsedReportCache.size()).isEqualTo(0);
+    Coverage coverage = new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate(new Coverage());
+    assertThat(coverage.files()).isNotEmpty();
+    Coverage cachedCoverage = new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate(new Coverage());
+    assertThat(cachedCoverage.files()).isEqualTo(coverage.files());
+    assertThat(parsedReportCache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void aggregate_coverage_snapshots() {
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "ncover", "opencover", "dotcover", "visualstudio", "snapshot");
+    Settings settings = mock(Settings.class);
+    assertThat(new CoverageAggregator(coverageConf, settings).hasCoverageProperty()).isFalse();
+
+    when(settings.hasKey("snapshot")).thenReturn(true);
+    when(settings.getString("snapshot")).thenReturn("foo.snapshot,bar.snapshot");
+    assertThat(new CoverageAggregator(coverageConf, settings).hasCoverageProperty()).isTrue();
+
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("foo.snapshot");
+    new CoverageAggregator(coverageConf, settings).aggregate(new Coverage());
+  }
+
+  @Test
+  public void aggregate_shared_between_languages() {
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("cs.opencover")).thenReturn(true);
+    when(settings.getString("cs.opencover")).thenReturn("src/test/resources/opencover/valid.xml");
+    when(settings.hasKey("vbnet.opencover")).thenReturn(true);
+    when(settings.getString("vbnet.opencover")).thenReturn("src/test/resources/opencover/../opencover/valid.xml");
+    when(settings.hasKey("other.opencover")).thenReturn(true);
+    when(settings.getString("other.opencover")).thenReturn("src/test/resources/opencover/valid.xml,src/test/resources/opencover/valid.xml");
+
+    ParsedReportCache parsedReportCache = new ParsedReportCache();
+    Coverage csCoverage = new CoverageAggregator(new CoverageConfiguration("cs", "", "cs.opencover", "", ""), settings, parsedReportCache).aggregate();
+    Coverage vbnetCoverage = new CoverageAggregator(new CoverageConfiguration("vbnet", "", "vbnet.opencover", "", ""), settings, parsedReportCache).aggregate();
+    Coverage otherCoverage = new CoverageAggregator(new CoverageConfiguration("other", "", "other.opencover", "", ""), settings, parsedReportCache).aggregate();
+
+    assertThat(csCoverage.files()).isNotEmpty();
+    assertThat(vbnetCoverage).isSameAs(csCoverage);
+    assertThat(otherCoverage).isNotSameAs(csCoverage);
+    assertThat(otherCoverage.files()).isEqualTo(csCoverage.files());
+
+    Coverage coverage = new CoverageAggregator(new CoverageConfiguration("cs", "", "cs.opencover", "", ""), settings).aggregate();
+    assertThat(coverage).isNotSameAs(csCoverage);
+    assertThat(coverage.files()).isEqualTo(csCoverage.files());
+  }
+
+  @Test
+  public void aggregate_shared_with_other_module_filters() throws Exception {
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml");
+    Settings filteredSettings = mock(Settings.class);
+    when(filteredSettings.hasKey("opencover")).thenReturn(true);
+    when(filteredSettings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml");
+    when(filteredSettings.getStringArray(ModuleFilter.EXCLUSIONS_PROPERTY_KEY)).thenReturn(new String[] {"MyLibraryNUnitTest"});
+
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "", "opencover", "", "");
+    ParsedReportCache parsedReportCache = new ParsedReportCache();
+    String testFile = new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath();
+
+    assertThat(new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate().files()).contains(testFile);
+    assertThat(new CoverageAggregator(coverageConf, filteredSettings, parsedReportCache).aggregate().files()).excludes(testFile);
+    assertThat(new CoverageAggregator(coverageConf, filteredSettings, parsedReportCache).aggregate(new Coverage()).files()).excludes(testFile);
+    assertThat(new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate(new Coverage()).files()).contains(testFile);
+  }
+
+  @Test
+  public void aggregate_with_file_filter() throws Exception {
+    CoverageConfiguration coverageConf = new CoverageConfiguration("", "ncover", "opencover", "dotcover", "visualstudio");
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("opencover")).thenReturn(true);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml");
+    final String adder = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+    Predicate<String> fileFilter = new Predicate<String>() {
+      @Override
+      public boolean apply(String file) {
+        return adder.equals(file);
+      }
+    };
+
+    assertThat(new CoverageAggregator(coverageConf, settings).aggregate(fileFilter).files()).containsOnly(adder);
+
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    when(settings.getString("opencover")).thenReturn("src/test/resources/opencover/valid.xml,src/test/resources/opencover/valid.xml");
+    assertThat(new CoverageAggregator(coverageConf, settings).aggregate(fileFilter).files()).containsOnly(adder);
+
+    ParsedReportCache parsedReportCache = new ParsedReportCache();
+    assertThat(new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate(fileFilter).files()).containsOnly(adder);
+    assertThat(new CoverageAggregator(coverageConf, settings, parsedReportCache).aggregate().files()).hasSize(3);
+  }
+
+  @Test
+  public void parser_configuration() {
+    Settings settings = new Settings();
+    String configuration = CoverageAggregator.parserConfiguration(settings);
+    assertThat(configuration).isEqualTo("inclusions=;exclusions=;lexicalPathNormalization=false;openCoverFastParsing=false");
+
+    settings.setProperty(CanonicalPathCache.LEXICAL_PROPERTY_KEY, true);
+    assertThat(CoverageAggregator.parserConfiguration(settings)).isNotEqualTo(configuration);
+  }
+
 }
@@ -0,0 +1,126 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageMergerTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+  @Test
+  public void merge() throws Exception {
+    File output = new File(tmp.getRoot(), "coverage.snapshot");
+    int status = run(
+      "--threads", "2",
+      "--ncover3", "src/test/resources/ncover3/valid.nccov",
+      "--opencover", "src/test/resources/opencover/valid.xml",
+      "--opencover", "src/test/resources/opencover/valid.xml",
+      "--visualstudio", "src/test/resources/visualstudio_coverage_xml/valid.coveragexml",
+      "--output", output.getPath());
+
+    assertThat(status).isEqualTo(0);
+    assertThat(out.toString()).contains("Merged the coverage of ").contains(output.getAbsolutePath());
+
+    Settings settings = new Settings();
+    settings.setProperty("ncover3", "src/test/resources/ncover3/valid.nccov");
+    settings.setProperty("opencover", "src/test/resources/opencover/valid.xml,src/test/resources/opencover/valid.xml");
+    settings.setProperty("visualstudio", "src/test/resources/visualstudio_coverage_xml/valid.coveragexml");
+    Coverage expected = new CoverageAggregator(new CoverageConfiguration("", "ncover3", "opencover", "dotcover", "visualstudio"), settings)
+      .aggregate(new Coverage());
+
+    CoverageSnapshot snapshot = CoverageSnapshot.open(output);
+    assertThat(snapshot.files()).isNotEmpty();
+    assertThat(Lists.newArrayList(snapshot.files())).isEqualTo(Lists.newArrayList(expected.files()));
+    for (String file : expected.files()) {
+      assertThat(Lists.newArrayList(snapshot.hits(file).entrySet())).isEqualTo(Lists.newArrayList(expected.hits(file).entrySet()));
+    }
+  }
+
+  @Test
+  public void merge_snapshots() throws Exception {
+    File first = new File(tmp.getRoot(), "first.snapshot");
+    File second = new File(tmp.getRoot(), "second.snapshot");
+    assertThat(run("--opencover", "src/test/resources/opencover/valid.xml", "--output", first.getPath())).isEqualTo(0);
+    assertThat(run("--lexical-paths", "--snapshot", first.getPath() + "," + first.getPath(), "--output", second.getPath())).isEqualTo(0);
+
+    CoverageSnapshot firstSnapshot = CoverageSnapshot.open(first);
+    CoverageSnapshot secondSnapshot = CoverageSnapshot.open(second);
+    assertThat(secondSnapshot.files()).isEqualTo(firstSnapshot.files());
+    for (String file : firstSnapshot.files()) {
+      for (Integer line : firstSnapshot.hits(file).keySet()) {
+        assertThat(secondSnapshot.hits(file).get(line)).isEqualTo(2 * firstSnapshot.hits(file).get(line));
+      }
+    }
+  }
+
+  @Test
+  public void usage_errors() {
+    assertThat(run("--opencover", "src/test/resources/opencover/valid.xml")).isEqualTo(1);
+    assertThat(err.toString()).contains("Missing --output").contains("Usage: CoverageMerger");
+
+    err.reset();
+    assertThat(run("--foo", "bar")).isEqualTo(1);
+    assertThat(err.toString()).contains("Unknown option --foo").contains("Usage: CoverageMerger");
+
+    err.reset();
+    assertThat(run("--output")).isEqualTo(1);
+    assertThat(err.toString()).contains("Missing value for --output");
+
+    err.reset();
+    assertThat(run("--opencover", "src/test/resources/opencover/valid.xml", "--threads")).isEqualTo(1);
+    assertThat(err.toString()).contains("Missing value for --threads");
+
+    err.reset();
+    assertThat(run("src/test/resources/opencover/valid.xml", "--output", "coverage.snapshot")).isEqualTo(1);
+    assertThat(err.toString()).contains("Unknown option src/test/resources/opencover/valid.xml");
+  }
+
+  @Test
+  public void invalid_threads() {
+    File output = new File(tmp.getRoot(), "coverage.snapshot");
+    assertThat(run("--threads", "many", "--output", output.getPath())).isEqualTo(1);
+    assertThat(err.toString()).contains("Invalid value for --threads: many").contains("Usage: CoverageMerger");
+
+    err.reset();
+    assertThat(run("--threads", "0", "--output", output.getPath())).isEqualTo(1);
+    assertThat(err.toString()).contains("Invalid value for --threads: 0");
+    assertThat(output.exists()).isFalse();
+  }
+
+  private int run(String... args) {
+    return CoverageMerger.run(args, new PrintStream(out), new PrintStream(err));
+  }
+
+}
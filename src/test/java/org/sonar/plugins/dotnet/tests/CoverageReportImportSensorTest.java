@@ -19,6 +19,8 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
@@ -30,13 +32,16 @@ import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Language;
 import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
 
+import java.io.File;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class CoverageReportImportSensorTest {
@@ -79,15 +84,16 @@ public class CoverageReportImportSensorTest {
     org.sonar.api.resources.File csSonarFile = mockSonarFile("cs");
     org.sonar.api.resources.File javaSonarFile = mockSonarFile("java");
 
-    when(fileProvider.fromPath("Foo.cs")).thenReturn(csSonarFile);
-    when(fileProvider.fromPath("Bar.cs")).thenReturn(null);
-    when(fileProvider.fromPath("Baz.java")).thenReturn(javaSonarFile);
+    when(fileProvider.fromPaths(coverage.files())).thenReturn(ImmutableMap.<String, org.sonar.api.resources.File>builder()
+      .put("Foo.cs", csSonarFile)
+      .put("Baz.java", javaSonarFile)
+      .build());
 
     CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "", "", "", "");
 
     new CoverageReportImportSensor(coverageConf, coverageAggregator).analyze(context, fileProvider, coverage);
 
-    verify(coverageAggregator).aggregate(coverage);
+    verifyZeroInteractions(coverageAggregator);
     verify(context, Mockito.times(3)).saveMeasure(Mockito.any(Resource.class), Mockito.any(Measure.class));
 
     ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
@@ -111,4 +117,28 @@ public class CoverageReportImportSensorTest {
     return sonarFile;
   }
 
+  @Test
+  public void file_filter() {
+    File src = new File("src").getAbsoluteFile();
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(fileSystem.getSourceDirs()).thenReturn(ImmutableList.of(src));
+    Project project = mock(Project.class);
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    SensorContext context = mock(SensorContext.class);
+
+    CoverageAggregator coverageAggregator = mock(CoverageAggregator.class);
+    when(coverageAggregator.aggregate(Mockito.<Predicate<String>>any())).thenReturn(new Coverage());
+    CoverageConfiguration coverageConf = new CoverageConfiguration("cs", "", "", "", "");
+    new CoverageReportImportSensor(coverageConf, coverageAggregator).analyse(project, context);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Predicate<String>> fileFilter = (ArgumentCaptor) ArgumentCaptor.forClass(Predicate.class);
+    verify(coverageAggregator).aggregate(fileFilter.capture());
+
+    assertThat(fileFilter.getValue().apply(new File(src, "a/Foo.cs").getPath())).isTrue();
+    assertThat(fileFilter.getValue().apply(new File("Bar.cs").getAbsolutePath())).isFalse();
+    // Resources are never resolved by the filter, which parsers may apply from several threads
+    verifyZeroInteractions(context);
+  }
+
 }
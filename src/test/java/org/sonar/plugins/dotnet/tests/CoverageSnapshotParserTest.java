@@ -0,0 +1,81 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Predicates;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class CoverageSnapshotParserTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void valid() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    coverage.addHits("Bar.cs", 3, 0);
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+
+    coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 1);
+    new CoverageSnapshotParser().parse(file, coverage);
+
+    assertThat(coverage.files()).containsOnly("Foo.cs", "Bar.cs");
+    assertThat(coverage.hits("Foo.cs")).hasSize(1).includes(entry(1, 3));
+    assertThat(coverage.hits("Bar.cs")).hasSize(1).includes(entry(3, 0));
+  }
+
+  @Test
+  public void file_filter() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 2);
+    coverage.addHits("Bar.cs", 3, 0);
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+
+    coverage = new Coverage(Predicates.equalTo("Foo.cs"));
+    new CoverageSnapshotParser().parse(file, coverage);
+
+    assertThat(coverage.files()).containsOnly("Foo.cs");
+    assertThat(coverage.hits("Foo.cs")).hasSize(1).includes(entry(1, 2));
+  }
+
+  @Test
+  public void invalid() throws Exception {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Not a valid coverage snapshot: ");
+    thrown.expectMessage("valid.xml");
+    new CoverageSnapshotParser().parse(new File("src/test/resources/opencover/valid.xml"), new Coverage());
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class CoverageSnapshotTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void write_and_open() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("/src/MyLibrary/Adder.cs", 12, 3);
+    coverage.addHits("/src/MyLibrary/Adder.cs", 3, 0);
+    coverage.addHits("/src/MyLibrary/Adder.cs", 1 << 24, 1);
+    coverage.addHits("/src/MyLibrary/Adder.cs", -1, Integer.MAX_VALUE);
+    coverage.addHits("/src/MyLibrary/Multiplier.cs", 42, 7);
+    coverage.addHits("/src/Ünïcode.cs", 1, 1);
+    coverage.addHits("/src/Empty.cs", 1, 0);
+
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+    CoverageSnapshot snapshot = CoverageSnapshot.open(file);
+
+    assertThat(Lists.newArrayList(snapshot.files())).isEqualTo(Lists.newArrayList(coverage.files()));
+    for (String path : coverage.files()) {
+      assertThat(Lists.newArrayList(snapshot.hits(path).entrySet())).isEqualTo(Lists.newArrayList(coverage.hits(path).entrySet()));
+    }
+    assertThat(snapshot.hits("/src/MyLibrary/Adder.cs")).includes(entry(-1, Integer.MAX_VALUE), entry(1 << 24, 1));
+    assertThat(snapshot.hits("/src/Unknown.cs")).isEmpty();
+
+    Coverage mergedCoverage = new Coverage();
+    mergedCoverage.addHits("/src/MyLibrary/Multiplier.cs", 42, 1);
+    snapshot.mergeInto(mergedCoverage);
+    assertThat(mergedCoverage.files()).hasSize(4);
+    assertThat(mergedCoverage.hits("/src/MyLibrary/Multiplier.cs")).includes(entry(42, 8)).hasSize(1);
+  }
+
+  @Test
+  public void write_and_load() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("/src/MyLibrary/Adder.cs", 12, 3);
+    coverage.addHits("/src/MyLibrary/Multiplier.cs", 42, 7);
+
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+    CoverageSnapshot snapshot = CoverageSnapshot.load(file);
+    assertThat(file.delete()).isTrue();
+
+    assertThat(Lists.newArrayList(snapshot.files())).isEqualTo(Lists.newArrayList(coverage.files()));
+    assertThat(snapshot.hits("/src/MyLibrary/Adder.cs")).includes(entry(12, 3)).hasSize(1);
+    assertThat(snapshot.mergeInto(new Coverage()).hits("/src/MyLibrary/Multiplier.cs")).includes(entry(42, 7)).hasSize(1);
+  }
+
+  @Test
+  public void empty_coverage() throws Exception {
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(new Coverage(), file);
+
+    assertThat(file.length()).isEqualTo(21);
+    assertThat(CoverageSnapshot.open(file).files()).isEmpty();
+  }
+
+  @Test
+  public void compact() throws Exception {
+    Coverage coverage = new Coverage();
+    for (int i = 0; i < 100; i++) {
+      for (int line = 1; line <= 100; line++) {
+        coverage.addHits("/src/MyLibrary/File" + i + ".cs", line, line % 3);
+      }
+    }
+
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+
+    // 2 bytes per line, the shared prefix of paths is only stored once
+    assertThat(file.length()).isLessThan(100 * 100 * 2 + 100 * 10 + 100);
+  }
+
+  @Test
+  public void not_a_snapshot() throws Exception {
+    File file = tmp.newFile("coverage.snapshot");
+    Files.write(new byte[64], file);
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Not a valid coverage snapshot: ");
+    thrown.expectMessage("coverage.snapshot");
+    CoverageSnapshot.open(file);
+  }
+
+  @Test
+  public void truncated_snapshot() throws Exception {
+    Coverage coverage = new Coverage();
+    coverage.addHits("Foo.cs", 1, 1);
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(coverage, file);
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    randomAccessFile.setLength(file.length() - 1);
+    randomAccessFile.close();
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Not a valid coverage snapshot: ");
+    CoverageSnapshot.open(file);
+  }
+
+  @Test
+  public void unsupported_version() throws Exception {
+    File file = tmp.newFile("coverage.snapshot");
+    CoverageSnapshot.write(new Coverage(), file);
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    randomAccessFile.seek(4);
+    randomAccessFile.writeInt(42);
+    randomAccessFile.close();
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Unsupported coverage snapshot version 42 in ");
+    CoverageSnapshot.open(file);
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Predicate;
+import org.fest.assertions.MapAssert;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CoverageTest {
+
+  @Test
+  public void add_hits() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 42, 1);
+    coverage.addHits("bar.cs", 2, 0);
+    coverage.addHits("foo.cs", 3, 0);
+    coverage.addHits("foo.cs", 42, 2);
+    coverage.addHits(new String("bar.cs"), 2, 3);
+
+    assertThat(coverage.files()).containsOnly("foo.cs", "bar.cs");
+
+    assertThat(coverage.hits("foo.cs"))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(3, 0),
+        MapAssert.entry(42, 3));
+    assertThat(coverage.hits("bar.cs"))
+      .hasSize(1)
+      .includes(MapAssert.entry(2, 3));
+  }
+
+  @Test
+  public void out_of_range_lines() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 16707566, 1);
+    coverage.addHits("foo.cs", -1, 1);
+    coverage.addHits("foo.cs", 1, 1);
+    coverage.addHits("foo.cs", 16707566, 1);
+
+    assertThat(coverage.hits("foo.cs"))
+      .hasSize(3)
+      .includes(
+        MapAssert.entry(-1, 1),
+        MapAssert.entry(1, 1),
+        MapAssert.entry(16707566, 2));
+    assertThat(coverage.hits("foo.cs").get(16707566)).isEqualTo(2);
+    assertThat(coverage.hits("foo.cs").get(2)).isNull();
+  }
+
+  @Test
+  public void merge_with() {
+    Coverage coverage = new Coverage();
+    coverage.addHits("foo.cs", 1, 1);
+
+    Coverage other = new Coverage();
+    other.addHits("bar.cs", 2, 0);
+    other.addHits("foo.cs", 1, 2);
+    other.addHits("foo.cs", 16707566, 1);
+
+    coverage.mergeWith(other);
+
+    assertThat(coverage.files()).containsOnly("foo.cs", "bar.cs");
+    assertThat(coverage.hits("foo.cs"))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(1, 3),
+        MapAssert.entry(16707566, 1));
+    assertThat(coverage.hits("bar.cs"))
+      .hasSize(1)
+      .includes(MapAssert.entry(2, 0));
+  }
+
+  @Test
+  public void unknown_file() {
+    assertThat(new Coverage().hits("foo.cs")).isEmpty();
+    assertThat(new Coverage().files()).isEmpty();
+  }
+
+  @Test
+  public void file_filter() {
+    Coverage coverage = new Coverage(new Predicate<String>() {
+      @Override
+      public boolean apply(String file) {
+        return file.endsWith(".cs");
+      }
+    });
+    assertThat(coverage.accepts("foo.cs")).isTrue();
+    assertThat(coverage.accepts("foo.vb")).isFalse();
+
+    coverage.addHits("foo.cs", 1, 1);
+    coverage.addHits("foo.vb", 1, 1);
+
+    Coverage other = new Coverage();
+    other.addHits("bar.cs", 2, 2);
+    other.addHits("bar.vb", 2, 2);
+    coverage.mergeWith(other);
+
+    assertThat(coverage.files()).containsOnly("foo.cs", "bar.cs");
+    assertThat(coverage.hits("foo.vb")).isEmpty();
+    assertThat(new Coverage().accepts("foo.vb")).isTrue();
+  }
+
+}
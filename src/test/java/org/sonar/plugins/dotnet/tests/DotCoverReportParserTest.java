@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Predicates;
 import org.fest.assertions.MapAssert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -37,22 +38,45 @@ public class DotCoverReportParserTest {
   @Test
   public void no_title() {
     thrown.expect(IllegalArgumentException.class);
-    thrown.expectMessage("The report contents does not match the following regular expression: .*?<title>(.*?)</title>.*");
+    thrown.expectMessage("The mandatory <title> tag is missing in ");
+    thrown.expectMessage(new File("src/test/resources/dotcover/no_title.html").getAbsolutePath());
     new DotCoverReportParser().parse(new File("src/test/resources/dotcover/no_title.html"), mock(Coverage.class));
   }
 
   @Test
   public void no_highlight() {
     thrown.expect(IllegalArgumentException.class);
-    thrown.expectMessage("The report contents does not match the following regular expression: "
-      + ".*<script type=\"text/javascript\">\\s*+highlightRanges\\(\\[(.*?)\\]\\);\\s*+</script>.*");
-    new DotCoverReportParser().parse(new File("src/test/resources/dotcover/no_highlight.html"), mock(Coverage.class));
+    thrown.expectMessage("The mandatory highlightRanges() call is missing in ");
+    thrown.expectMessage(new File("src/test/resources/dotcover/no_highlight.html").getAbsolutePath());
+    new DotCoverReportParser().parse(new File("src/test/resources/dotcover/no_highlight.html"), new Coverage());
+  }
+
+  @Test
+  public void overflow() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Too large number in the highlightRanges() call of ");
+    thrown.expectMessage(new File("src/test/resources/dotcover/overflow.html").getAbsolutePath());
+    new DotCoverReportParser().parse(new File("src/test/resources/dotcover/overflow.html"), new Coverage());
   }
 
   @Test
   public void valid() throws Exception {
+    assertValid("src/test/resources/dotcover/valid.html");
+  }
+
+  @Test
+  public void wrong_range_in_ignored_call() throws Exception {
+    assertValid("src/test/resources/dotcover/wrong_range.html");
+  }
+
+  @Test
+  public void unanchored_call() throws Exception {
+    assertValid("src/test/resources/dotcover/unanchored_call.html");
+  }
+
+  private static void assertValid(String path) throws Exception {
     Coverage coverage = new Coverage();
-    new DotCoverReportParser().parse(new File("src/test/resources/dotcover/valid.html"), coverage);
+    new DotCoverReportParser().parse(new File(path), coverage);
 
     assertThat(coverage.files()).containsOnly(
       new File("mylibrary\\calc.cs").getCanonicalPath());
@@ -78,4 +102,12 @@ public class DotCoverReportParserTest {
         MapAssert.entry(34, 0));
   }
 
+  @Test
+  public void filtered() {
+    Coverage coverage = new Coverage(Predicates.<String>alwaysFalse());
+    new DotCoverReportParser().parse(new File("src/test/resources/dotcover/wrong_range.html"), coverage);
+
+    assertThat(coverage.files()).isEmpty();
+  }
+
 }
@@ -22,10 +22,15 @@ package org.sonar.plugins.dotnet.tests;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.fest.assertions.MapAssert;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -49,6 +54,14 @@ public class DotCoverReportsAggregatorTest {
     new DotCoverReportsAggregator(mock(DotCoverReportParser.class)).parse(new File("src/test/resources/dotcover_aggregator/not_html.html"), mock(Coverage.class));
   }
 
+  @Test
+  public void bom_and_whitespaces() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The following report dotCover report HTML sources folder cannot be found: ");
+    thrown.expectMessage(new File("src/test/resources/dotcover_aggregator/bom_and_whitespaces/src").getAbsolutePath());
+    new DotCoverReportsAggregator(mock(DotCoverReportParser.class)).parse(new File("src/test/resources/dotcover_aggregator/bom_and_whitespaces.html"), mock(Coverage.class));
+  }
+
   @Test
   public void no_extension() {
     thrown.expect(IllegalArgumentException.class);
@@ -68,4 +81,29 @@ public class DotCoverReportsAggregatorTest {
     verify(parser, Mockito.never()).parse(new File("src/test/resources/dotcover_aggregator/foo.bar/src/nosource.html"), coverage);
   }
 
+  @Test
+  public void valid_in_parallel() {
+    DotCoverReportParser parser = mock(DotCoverReportParser.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        File reportFile = (File) invocation.getArguments()[0];
+        Coverage coverage = (Coverage) invocation.getArguments()[1];
+        coverage.addHits(reportFile.getName(), 1, 1);
+        coverage.addHits("common.cs", 1, 1);
+        return null;
+      }
+    }).when(parser).parse(Mockito.any(File.class), Mockito.any(Coverage.class));
+
+    Coverage coverage = new Coverage();
+    new DotCoverReportsAggregator(parser, 4).parse(new File("src/test/resources/dotcover_aggregator/foo.bar.html"), coverage);
+
+    verify(parser).parse(Mockito.eq(new File("src/test/resources/dotcover_aggregator/foo.bar/src/1.html")), Mockito.any(Coverage.class));
+    verify(parser).parse(Mockito.eq(new File("src/test/resources/dotcover_aggregator/foo.bar/src/2.html")), Mockito.any(Coverage.class));
+    verify(parser, Mockito.never()).parse(Mockito.eq(new File("src/test/resources/dotcover_aggregator/foo.bar/src/nosource.html")), Mockito.any(Coverage.class));
+
+    assertThat(coverage.files()).containsOnly("1.html", "2.html", "common.cs");
+    assertThat(coverage.hits("common.cs")).hasSize(1).includes(MapAssert.entry(1, 2));
+  }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.resources.Resource;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileProviderTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void from_path() throws Exception {
+    File root = tmp.newFolder("root");
+    File src = new File(root, "src");
+    File test = new File(root, "test");
+    FileProvider fileProvider = new FileProvider(mockProject(src, test), mockContext());
+
+    assertThat(fileProvider.fromPath(new File(src, "Foo.cs").getAbsolutePath()).getKey()).isEqualTo("Foo.cs");
+    assertThat(fileProvider.fromPath(new File(src, "a/b/Bar.cs").getAbsolutePath()).getKey()).isEqualTo("a/b/Bar.cs");
+    assertThat(fileProvider.fromPath(new File(src, "a/../a/./b/Baz.cs").getAbsolutePath()).getKey()).isEqualTo("a/b/Baz.cs");
+    assertThat(fileProvider.fromPath(new File(test, "FooTest.cs").getAbsolutePath()).getKey()).isEqualTo("FooTest.cs");
+    assertThat(fileProvider.fromPath(new File(root, "Foo.cs").getAbsolutePath())).isNull();
+    assertThat(fileProvider.fromPath(new File(root, "other/Foo.cs").getAbsolutePath())).isNull();
+  }
+
+  @Test
+  public void from_paths() throws Exception {
+    File src = tmp.newFolder("src");
+    SensorContext context = mockContext();
+    FileProvider fileProvider = new FileProvider(mockProject(src), context);
+
+    String foo = new File(src, "a/Foo.cs").getAbsolutePath();
+    String bar = new File(src, "a/Bar.cs").getAbsolutePath();
+    String outside = tmp.newFile("Outside.cs").getAbsolutePath();
+
+    Map<String, org.sonar.api.resources.File> sonarFiles = fileProvider.fromPaths(ImmutableList.of(foo, bar, outside));
+    assertThat(sonarFiles).hasSize(2);
+    assertThat(sonarFiles.get(foo).getKey()).isEqualTo("a/Foo.cs");
+    assertThat(sonarFiles.get(bar).getKey()).isEqualTo("a/Bar.cs");
+
+    verify(context, Mockito.times(2)).getResource(Mockito.any(Resource.class));
+  }
+
+  @Test
+  public void resource_unknown_to_the_context() throws Exception {
+    File src = tmp.newFolder("src");
+    SensorContext context = mock(SensorContext.class);
+    FileProvider fileProvider = new FileProvider(mockProject(src), context);
+
+    assertThat(fileProvider.fromPath(new File(src, "Foo.cs").getAbsolutePath())).isNull();
+    assertThat(fileProvider.fromPaths(ImmutableList.of(new File(src, "Foo.cs").getAbsolutePath()))).isEmpty();
+  }
+
+  @Test
+  public void source_dirs_filter() throws Exception {
+    File root = tmp.newFolder("root");
+    File src = new File(root, "src");
+    File test = new File(root, "test");
+    SensorContext context = mock(SensorContext.class);
+    Predicate<String> filter = new FileProvider(mockProject(src, test), context).sourceDirsFilter();
+
+    assertThat(filter.apply(new File(src, "Foo.cs").getAbsolutePath())).isTrue();
+    assertThat(filter.apply(new File(src, "a/b/Bar.cs").getAbsolutePath())).isTrue();
+    assertThat(filter.apply(new File(test, "a/../FooTest.cs").getAbsolutePath())).isTrue();
+    assertThat(filter.apply(new File(root, "Foo.cs").getAbsolutePath())).isFalse();
+    assertThat(filter.apply(new File(root, "src2/Foo.cs").getAbsolutePath())).isFalse();
+    assertThat(filter.apply(new File(src, "../Foo.cs").getAbsolutePath())).isFalse();
+    Mockito.verifyZeroInteractions(context);
+  }
+
+  private static Project mockProject(File... sourceDirs) {
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(fileSystem.getSourceDirs()).thenReturn(ImmutableList.copyOf(sourceDirs));
+    Project project = mock(Project.class);
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    return project;
+  }
+
+  private static SensorContext mockContext() {
+    SensorContext context = mock(SensorContext.class);
+    when(context.getResource(Mockito.any(Resource.class))).thenAnswer(new Answer<Resource>() {
+      @Override
+      public Resource answer(InvocationOnMock invocation) {
+        return (Resource) invocation.getArguments()[0];
+      }
+    });
+    return context;
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IdTableTest {
+
+  @Test
+  public void dense_ids() {
+    IdTable<String> table = new IdTable<String>();
+    table.put(0, "zero");
+    table.put(1, "one");
+    table.put(1000, "thousand");
+
+    assertThat(table.get(0)).isEqualTo("zero");
+    assertThat(table.get(1)).isEqualTo("one");
+    assertThat(table.get(1000)).isEqualTo("thousand");
+    assertThat(table.get(2)).isNull();
+    assertThat(table.get(999)).isNull();
+    assertThat(table.get(1001)).isNull();
+    assertThat(table.get(100000)).isNull();
+
+    table.put(1, "uno");
+    assertThat(table.get(1)).isEqualTo("uno");
+  }
+
+  @Test
+  public void sparse_ids() {
+    IdTable<String> table = new IdTable<String>();
+    table.put(-1, "minus one");
+    table.put(Integer.MAX_VALUE, "max");
+
+    assertThat(table.get(-1)).isEqualTo("minus one");
+    assertThat(table.get(Integer.MAX_VALUE)).isEqualTo("max");
+    assertThat(table.get(Integer.MIN_VALUE)).isNull();
+    assertThat(table.get(Integer.MAX_VALUE - 1)).isNull();
+  }
+
+}
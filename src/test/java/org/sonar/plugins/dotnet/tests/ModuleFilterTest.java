@@ -0,0 +1,83 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ModuleFilterTest {
+
+  @Test
+  public void accept_all() {
+    ModuleFilter filter = ModuleFilter.acceptAll();
+
+    assertThat(filter.acceptsAll()).isTrue();
+    assertThat(filter.accepts("Foo", "C:\\Foo.dll")).isTrue();
+    assertThat(filter.accepts(null, null)).isTrue();
+  }
+
+  @Test
+  public void inclusions() {
+    ModuleFilter filter = new ModuleFilter(new String[] {"MyLibrary*"}, new String[0]);
+
+    assertThat(filter.acceptsAll()).isFalse();
+    assertThat(filter.accepts("MyLibrary", null)).isTrue();
+    assertThat(filter.accepts("MyLibraryTest", "C:\\Test\\MyLibraryTest.dll")).isTrue();
+    assertThat(filter.accepts("mscorlib", "C:\\Windows\\mscorlib.dll")).isFalse();
+    assertThat(filter.accepts(null, null)).isFalse();
+  }
+
+  @Test
+  public void exclusions() {
+    ModuleFilter filter = new ModuleFilter(new String[0], new String[] {"*Test", "**/Windows/**"});
+
+    assertThat(filter.accepts("MyLibrary", "C:\\Projects\\MyLibrary.dll")).isTrue();
+    assertThat(filter.accepts("MyLibraryTest", "C:\\Projects\\MyLibraryTest.dll")).isFalse();
+    assertThat(filter.accepts("mscorlib", "C:\\Windows\\mscorlib.dll")).isFalse();
+    assertThat(filter.accepts(null, null)).isTrue();
+  }
+
+  @Test
+  public void inclusions_and_exclusions() {
+    ModuleFilter filter = new ModuleFilter(new String[] {"MyLibrary*"}, new String[] {"*Test"});
+
+    assertThat(filter.accepts("MyLibrary", null)).isTrue();
+    assertThat(filter.accepts("MyLibraryTest", null)).isFalse();
+    assertThat(filter.accepts("Other", null)).isFalse();
+  }
+
+  @Test
+  public void from_settings() {
+    Settings settings = new Settings();
+    assertThat(ModuleFilter.fromSettings(settings).acceptsAll()).isTrue();
+
+    settings.setProperty(ModuleFilter.INCLUSIONS_PROPERTY_KEY, "Foo*, Bar");
+    settings.setProperty(ModuleFilter.EXCLUSIONS_PROPERTY_KEY, "FooTest");
+    ModuleFilter filter = ModuleFilter.fromSettings(settings);
+
+    assertThat(filter.accepts("Foo", null)).isTrue();
+    assertThat(filter.accepts("Bar", null)).isTrue();
+    assertThat(filter.accepts("FooTest", null)).isFalse();
+    assertThat(filter.toString()).isEqualTo("inclusions=Foo*,Bar;exclusions=FooTest");
+  }
+
+}
@@ -23,11 +23,14 @@ import org.fest.assertions.MapAssert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 
 import java.io.File;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class NCover3ReportParserTest {
 
@@ -89,4 +92,18 @@ public class NCover3ReportParserTest {
         MapAssert.entry(37, 2));
   }
 
+  @Test
+  public void filtered() throws Exception {
+    String keptFile = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+    String rejectedFile = new File("MyLibraryTest\\AdderTest.cs").getCanonicalPath();
+    Coverage coverage = mock(Coverage.class);
+    when(coverage.accepts(keptFile)).thenReturn(true);
+
+    new NCover3ReportParser().parse(new File("src/test/resources/ncover3/valid.nccov"), coverage);
+
+    verify(coverage, Mockito.atLeastOnce()).addHits(Mockito.eq(keptFile), Mockito.anyInt(), Mockito.anyInt());
+    verify(coverage).accepts(rejectedFile);
+    verify(coverage, Mockito.never()).addHits(Mockito.eq(rejectedFile), Mockito.anyInt(), Mockito.anyInt());
+  }
+
 }
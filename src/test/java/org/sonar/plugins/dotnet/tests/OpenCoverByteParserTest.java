@@ -0,0 +1,124 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.fest.assertions.MapAssert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OpenCoverByteParserTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void same_coverage_as_stax_parser() throws Exception {
+    File report = new File("src/test/resources/opencover/valid.xml");
+    Coverage coverage = new Coverage();
+    assertThat(parse(report, coverage)).isTrue();
+
+    Coverage expectedCoverage = new Coverage();
+    new OpenCoverReportParser().parse(report, expectedCoverage);
+
+    assertThat(Lists.newArrayList(coverage.files())).isEqualTo(Lists.newArrayList(expectedCoverage.files()));
+    for (String file : expectedCoverage.files()) {
+      assertThat(coverage.hits(file)).isEqualTo(expectedCoverage.hits(file));
+    }
+  }
+
+  @Test
+  public void comments_and_cdata() throws Exception {
+    Coverage coverage = new Coverage();
+    assertThat(parse(report(
+      "<?xml version=\"1.0\"?>\n"
+        + "<!-- <SequencePoint sl=\"1\" vc=\"1\" /> -->\n"
+        + "<CoverageSession><Modules><Module><Files><File uid='1' fullPath=\"Foo.cs\"/></Files>\n"
+        + "<Classes><Class><Methods><Method><FileRef uid=\"1\" /><SequencePoints>\n"
+        + "<SequencePoint vc=\"3\" sl=\"10\" sc=\"1\" comment=\"a > b\" />\n"
+        + "<SequencePoint vc=\"0\" sl=\"11\"></SequencePoint>\n"
+        + "</SequencePoints><Name><![CDATA[<SequencePoint sl=\"12\" vc=\"1\" />]]></Name></Method></Methods></Class></Classes></Module></Modules></CoverageSession>\n"),
+      coverage)).isTrue();
+
+    String file = new File("Foo.cs").getCanonicalPath();
+    assertThat(coverage.files()).containsOnly(file);
+    assertThat(coverage.hits(file)).hasSize(2).includes(MapAssert.entry(10, 3), MapAssert.entry(11, 0));
+  }
+
+  @Test
+  public void unsupported_content() throws Exception {
+    assertThat(parse(new File("src/test/resources/opencover/invalid_root.xml"), new Coverage())).isFalse();
+    assertThat(parse(new File("src/test/resources/opencover/missing_start_line.xml"), new Coverage())).isFalse();
+    assertThat(parse(new File("src/test/resources/opencover/wrong_start_line.xml"), new Coverage())).isFalse();
+    assertThat(parse(new File("src/test/resources/opencover/non_existing_file.xml"), new Coverage())).isFalse();
+
+    assertThat(parse(report(""), new Coverage())).isFalse();
+    assertThat(parse(report("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><CoverageSession />"), new Coverage())).isFalse();
+    assertThat(parse(report("<!DOCTYPE CoverageSession><CoverageSession />"), new Coverage())).isFalse();
+    assertThat(parse(report("<CoverageSession><Modules></CoverageSession>"), new Coverage())).isFalse();
+    assertThat(parse(report("<CoverageSession></Modules></CoverageSession>"), new Coverage())).isFalse();
+    assertThat(parse(report("<CoverageSession><File uid=\"1\" fullPath=\"Foo &amp; Bar.cs\" /></CoverageSession>"), new Coverage())).isFalse();
+    assertThat(parse(report("<CoverageSession><FileRef uid=\"99999999999\" /></CoverageSession>"), new Coverage())).isFalse();
+    assertThat(parse(report("<CoverageSession><SequencePoint sl=\"1\" vc=\"1\""), new Coverage())).isFalse();
+
+    File utf16Report = tmp.newFile();
+    Files.write("<CoverageSession />", utf16Report, Charsets.UTF_16);
+    assertThat(parse(utf16Report, new Coverage())).isFalse();
+  }
+
+  @Test
+  public void empty_session() throws Exception {
+    Coverage coverage = new Coverage();
+    assertThat(parse(report("﻿<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n<CoverageSession />\r\n"), coverage)).isTrue();
+    assertThat(coverage.files()).isEmpty();
+  }
+
+  @Test
+  public void report_released_after_parsing() throws Exception {
+    File report = tmp.newFile("report.xml");
+    Files.copy(new File("src/test/resources/opencover/valid.xml"), report);
+    Coverage coverage = new Coverage();
+    assertThat(parse(report, coverage)).isTrue();
+
+    File renamedReport = new File(tmp.getRoot(), "renamed_report.xml");
+    assertThat(report.renameTo(renamedReport)).isTrue();
+    assertThat(renamedReport.delete()).isTrue();
+    assertThat(coverage.files()).isNotEmpty();
+  }
+
+  private static boolean parse(File report, Coverage coverage) {
+    return new OpenCoverByteParser(report, coverage, new CanonicalPathCache(false)).parse();
+  }
+
+  private File report(String content) throws IOException {
+    File report = tmp.newFile();
+    Files.write(content, report, Charsets.UTF_8);
+    return report;
+  }
+
+}
@@ -23,11 +23,14 @@ import org.fest.assertions.MapAssert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 
 import java.io.File;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class OpenCoverReportParserTest {
 
@@ -97,4 +100,60 @@ public class OpenCoverReportParserTest {
         MapAssert.entry(13, 0));
   }
 
+  @Test
+  public void filtered() throws Exception {
+    String keptFile = new File("MyLibrary\\Adder.cs").getCanonicalPath();
+    String rejectedFile = new File("MyLibrary\\Multiplier.cs").getCanonicalPath();
+    Coverage coverage = mock(Coverage.class);
+    when(coverage.accepts(keptFile)).thenReturn(true);
+
+    new OpenCoverReportParser().parse(new File("src/test/resources/opencover/valid.xml"), coverage);
+
+    verify(coverage, Mockito.atLeastOnce()).addHits(Mockito.eq(keptFile), Mockito.anyInt(), Mockito.anyInt());
+    verify(coverage).accepts(rejectedFile);
+    verify(coverage, Mockito.never()).addHits(Mockito.eq(rejectedFile), Mockito.anyInt(), Mockito.anyInt());
+  }
+
+  @Test
+  public void excluded_module() throws Exception {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser(new CanonicalPathCache(false), new ModuleFilter(new String[0], new String[] {"MyLibraryNUnitTest"}))
+      .parse(new File("src/test/resources/opencover/valid.xml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(
+      new File("MyLibrary\\Adder.cs").getCanonicalPath(),
+      new File("MyLibrary\\Multiplier.cs").getCanonicalPath());
+    assertThat(coverage.hits(new File("MyLibrary\\Adder.cs").getCanonicalPath())).hasSize(15);
+  }
+
+  @Test
+  public void included_module_path() throws Exception {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser(new CanonicalPathCache(false), new ModuleFilter(new String[] {"**/MyLibraryNUnitTest.dll"}, new String[0]))
+      .parse(new File("src/test/resources/opencover/valid.xml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath());
+  }
+
+  @Test
+  public void fast_parsing() throws Exception {
+    Coverage coverage = new Coverage();
+    new OpenCoverReportParser(new CanonicalPathCache(false), ModuleFilter.acceptAll(), true)
+      .parse(new File("src/test/resources/opencover/valid.xml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(
+      new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath(),
+      new File("MyLibrary\\Adder.cs").getCanonicalPath(),
+      new File("MyLibrary\\Multiplier.cs").getCanonicalPath());
+    assertThat(coverage.hits(new File("MyLibrary\\Adder.cs").getCanonicalPath())).hasSize(15);
+  }
+
+  @Test
+  public void fast_parsing_falls_back() {
+    thrown.expectMessage("Expected an integer instead of \"foo\" for the attribute \"sl\"");
+    thrown.expectMessage("wrong_start_line.xml at line 27");
+    new OpenCoverReportParser(new CanonicalPathCache(false), ModuleFilter.acceptAll(), true)
+      .parse(new File("src/test/resources/opencover/wrong_start_line.xml"), new Coverage());
+  }
+
 }
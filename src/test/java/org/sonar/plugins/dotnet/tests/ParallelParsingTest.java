@@ -0,0 +1,93 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParallelParsingTest {
+
+  @Test
+  public void results_in_submission_order() {
+    List<Integer> results = ParallelParsing.invokeAll(2, ImmutableList.of(new Constant(1), new Constant(2), new Constant(3)));
+    assertThat(results).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void nested_tasks_run_in_the_parsing_thread() {
+    List<Boolean> results = ParallelParsing.invokeAll(2, ImmutableList.of(new Nested(), new Nested()));
+    assertThat(results).containsExactly(true, true);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failure() {
+    ParallelParsing.invokeAll(2, ImmutableList.of(new Constant(1), new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        throw new IllegalStateException();
+      }
+    }));
+  }
+
+  private static class Constant implements Callable<Integer> {
+
+    private final int value;
+
+    public Constant(int value) {
+      this.value = value;
+    }
+
+    @Override
+    public Integer call() {
+      return value;
+    }
+
+  }
+
+  private static class CurrentThread implements Callable<Thread> {
+
+    @Override
+    public Thread call() {
+      return Thread.currentThread();
+    }
+
+  }
+
+  private static class Nested implements Callable<Boolean> {
+
+    @Override
+    public Boolean call() {
+      Thread parsingThread = Thread.currentThread();
+      for (Thread thread : ParallelParsing.invokeAll(4, ImmutableList.of(new CurrentThread(), new CurrentThread(), new CurrentThread()))) {
+        if (thread != parsingThread) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ParsedReportCacheTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void coverage() {
+    ParsedReportCache cache = new ParsedReportCache();
+    OpenCoverReportParser parser = new OpenCoverReportParser();
+    File report = new File("src/test/resources/opencover/valid.xml");
+
+    Coverage coverage = cache.coverage(parser, report);
+    assertThat(coverage.files()).isNotEmpty();
+    assertThat(cache.coverage(parser, report)).isSameAs(coverage);
+    assertThat(cache.coverage(parser, new File("src/test/resources/../resources/opencover/valid.xml"))).isSameAs(coverage);
+    assertThat(cache.coverage(new NCover3ReportParser(), new File("src/test/resources/ncover3/valid.nccov"))).isNotSameAs(coverage);
+    assertThat(cache.size()).isEqualTo(2);
+
+    cache.stop();
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.coverage(parser, report)).isNotSameAs(coverage);
+  }
+
+  @Test
+  public void coverage_with_two_configurations() throws Exception {
+    ParsedReportCache cache = new ParsedReportCache();
+    File report = new File("src/test/resources/opencover/valid.xml");
+    ModuleFilter moduleFilter = new ModuleFilter(new String[0], new String[] {"MyLibraryNUnitTest"});
+
+    Coverage coverage = cache.coverage(new OpenCoverReportParser(), ModuleFilter.acceptAll().toString(), report);
+    Coverage filteredCoverage = cache.coverage(new OpenCoverReportParser(new CanonicalPathCache(false), moduleFilter), moduleFilter.toString(), report);
+
+    assertThat(filteredCoverage).isNotSameAs(coverage);
+    assertThat(coverage.files()).contains(new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath());
+    assertThat(filteredCoverage.files()).excludes(new File("MyLibraryNUnitTest\\AdderNUnitTest.cs").getCanonicalPath());
+    assertThat(cache.coverage(new OpenCoverReportParser(), ModuleFilter.acceptAll().toString(), report)).isSameAs(coverage);
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void unit_test_results_with_two_configurations() {
+    ParsedReportCache cache = new ParsedReportCache();
+    File report = new File("src/test/resources/visualstudio_test_results/valid.trx");
+
+    UnitTestResults unitTestResults = cache.unitTestResults(new VisualStudioTestResultsFileParser(true), "summaryOnly=false", report);
+    assertThat(cache.unitTestResults(new VisualStudioTestResultsFileParser(false), "summaryOnly=true", report)).isNotSameAs(unitTestResults);
+    assertThat(cache.unitTestResults(new VisualStudioTestResultsFileParser(true), "summaryOnly=false", report)).isSameAs(unitTestResults);
+  }
+
+  @Test
+  public void unit_test_results() {
+    ParsedReportCache cache = new ParsedReportCache();
+    VisualStudioTestResultsFileParser parser = mock(VisualStudioTestResultsFileParser.class);
+    File report = new File("src/test/resources/visualstudio_test_results/valid.trx");
+
+    UnitTestResults unitTestResults = cache.unitTestResults(parser, report);
+    assertThat(cache.unitTestResults(parser, report)).isSameAs(unitTestResults);
+    verify(parser).parse(report, unitTestResults);
+  }
+
+  @Test
+  public void modified_report() throws Exception {
+    ParsedReportCache cache = new ParsedReportCache();
+    CoverageParser parser = mock(CoverageParser.class);
+    File report = tmp.newFile("report.xml");
+
+    Coverage coverage = cache.coverage(parser, report);
+    Files.write("modified".getBytes("UTF-8"), report);
+    assertThat(cache.coverage(parser, report)).isNotSameAs(coverage);
+    verify(parser, Mockito.times(2)).parse(Mockito.eq(report), Mockito.any(Coverage.class));
+  }
+
+  @Test
+  public void failures_are_not_cached() {
+    ParsedReportCache cache = new ParsedReportCache();
+    CoverageParser parser = mock(CoverageParser.class);
+    File report = new File("foo.xml");
+    doThrow(new IllegalStateException("foo")).when(parser).parse(Mockito.eq(report), Mockito.any(Coverage.class));
+
+    try {
+      cache.coverage(parser, report);
+    } catch (IllegalStateException e) {
+      assertThat(cache.size()).isEqualTo(0);
+    }
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("foo");
+    cache.coverage(parser, report);
+  }
+
+  @Test
+  public void canonical_path_caches() {
+    ParsedReportCache cache = new ParsedReportCache();
+    assertThat(cache.canonicalPathCache(false)).isSameAs(cache.canonicalPathCache(false));
+    assertThat(cache.canonicalPathCache(true)).isNotSameAs(cache.canonicalPathCache(false));
+    assertThat(new ParsedReportCache().canonicalPathCache(false)).isNotSameAs(cache.canonicalPathCache(false));
+
+    cache.canonicalPathCache(true).canonicalPath("Foo.cs");
+    cache.stop();
+    cache.canonicalPathCache(true).canonicalPath("Foo.cs");
+    assertThat(cache.canonicalPathCache(true).missCount()).isEqualTo(2);
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class PersistentReportCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void from_settings() {
+    Settings settings = new Settings();
+    assertThat(PersistentReportCache.fromSettings(settings)).isNull();
+
+    settings.setProperty(PersistentReportCache.DIRECTORY_PROPERTY_KEY, tmp.getRoot().getAbsolutePath());
+    assertThat(PersistentReportCache.fromSettings(settings)).isNotNull();
+  }
+
+  @Test
+  public void hit() throws Exception {
+    File directory = new File(tmp.getRoot(), "cache");
+    PersistentReportCache cache = new PersistentReportCache(directory, Long.MAX_VALUE);
+    File report = new File("src/test/resources/opencover/valid.xml");
+
+    OpenCoverReportParser parser = spy(new OpenCoverReportParser());
+    Coverage coverage = cache.coverage(parser, report);
+    Coverage cachedCoverage = cache.coverage(parser, report);
+    verify(parser).parse(Mockito.eq(report), Mockito.any(Coverage.class));
+
+    assertThat(directory.list()).hasSize(2);
+    assertThat(cachedCoverage.files()).isNotEmpty();
+    assertThat(Lists.newArrayList(cachedCoverage.files())).isEqualTo(Lists.newArrayList(coverage.files()));
+    for (String file : coverage.files()) {
+      assertThat(Lists.newArrayList(cachedCoverage.hits(file).entrySet())).isEqualTo(Lists.newArrayList(coverage.hits(file).entrySet()));
+    }
+
+    Coverage target = new Coverage();
+    target.addHits("Foo.cs", 1, 1);
+    cache.cached(new OpenCoverReportParser()).parse(report, target);
+    assertThat(target.files()).containsOnly(coverage.files().toArray()[0], coverage.files().toArray()[1], coverage.files().toArray()[2], "Foo.cs");
+  }
+
+  @Test
+  public void key() throws Exception {
+    File report = tmp.newFile("report.xml");
+    Files.write("foo".getBytes("UTF-8"), report);
+    File sameReport = tmp.newFile("same_report.xml");
+    Files.write("foo".getBytes("UTF-8"), sameReport);
+    File otherReport = tmp.newFile("other_report.xml");
+    Files.write("bar".getBytes("UTF-8"), otherReport);
+
+    String key = PersistentReportCache.key(new OpenCoverReportParser(), report);
+    assertThat(key).hasSize(40);
+    assertThat(PersistentReportCache.key(new OpenCoverReportParser(), sameReport)).isEqualTo(key);
+    assertThat(PersistentReportCache.key(new OpenCoverReportParser(), otherReport)).isNotEqualTo(key);
+    assertThat(PersistentReportCache.key(new NCover3ReportParser(), report)).isNotEqualTo(key);
+    assertThat(PersistentReportCache.key(new OpenCoverReportParser(), "inclusions=;exclusions=Foo", report)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void key_depends_on_versions() throws Exception {
+    File report = tmp.newFile("report.xml");
+    Files.write("foo".getBytes("UTF-8"), report);
+
+    assertThat(PersistentReportCache.VERSION).endsWith("/" + CoverageSnapshot.VERSION);
+    String workingDirectory = new File("").getCanonicalPath();
+    assertThat(PersistentReportCache.key(PersistentReportCache.VERSION, workingDirectory, new OpenCoverReportParser(), "", report))
+      .isEqualTo(PersistentReportCache.key(new OpenCoverReportParser(), report));
+    assertThat(PersistentReportCache.key("1.0/1", workingDirectory, new OpenCoverReportParser(), "", report))
+      .isNotEqualTo(PersistentReportCache.key("1.1/1", workingDirectory, new OpenCoverReportParser(), "", report));
+    assertThat(PersistentReportCache.key("1.1/1", workingDirectory, new OpenCoverReportParser(), "", report))
+      .isNotEqualTo(PersistentReportCache.key("1.1/2", workingDirectory, new OpenCoverReportParser(), "", report));
+  }
+
+  @Test
+  public void key_depends_on_working_directory() throws Exception {
+    File report = tmp.newFile("report.xml");
+    Files.write("foo".getBytes("UTF-8"), report);
+
+    assertThat(PersistentReportCache.key(PersistentReportCache.VERSION, "/project/a", new OpenCoverReportParser(), "", report))
+      .isNotEqualTo(PersistentReportCache.key(PersistentReportCache.VERSION, "/project/b", new OpenCoverReportParser(), "", report));
+  }
+
+  @Test
+  public void corrupted_entry() throws Exception {
+    File directory = tmp.newFolder("cache");
+    PersistentReportCache cache = new PersistentReportCache(directory, Long.MAX_VALUE);
+    File report = new File("src/test/resources/opencover/valid.xml");
+    OpenCoverReportParser parser = new OpenCoverReportParser();
+
+    File entry = new File(directory, PersistentReportCache.key(parser, report) + ".coverage");
+    Files.write(new byte[] {0, 1, 2}, entry);
+
+    assertThat(cache.coverage(parser, report).files()).hasSize(3);
+    assertThat(entry.length()).isGreaterThan(3);
+  }
+
+  @Test
+  public void eviction() throws Exception {
+    File directory = tmp.newFolder("cache");
+    File oldEntry = new File(directory, "old.coverage");
+    Files.write(new byte[100], oldEntry);
+    oldEntry.setLastModified(System.currentTimeMillis() - 60000);
+    File otherFile = new File(directory, "other.txt");
+    Files.write(new byte[100], otherFile);
+
+    PersistentReportCache cache = new PersistentReportCache(directory, 100);
+    CoverageParser parser = mock(CoverageParser.class);
+    cache.coverage(parser, new File("src/test/resources/opencover/valid.xml"));
+
+    assertThat(oldEntry.exists()).isFalse();
+    assertThat(otherFile.exists()).isTrue();
+    assertThat(directory.list()).hasSize(3);
+  }
+
+}
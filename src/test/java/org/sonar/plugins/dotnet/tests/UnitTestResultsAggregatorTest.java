@@ -82,4 +82,71 @@ public class UnitTestResultsAggregatorTest {
     verify(visualStudioTestResultsFileParser).parse(new File("bar.trx"), results);
   }
 
+  @Test
+  public void aggregate_with_parsed_report_cache() {
+    UnitTestConfiguration unitTestConf = new UnitTestConfiguration("visualStudioTestResultsFile");
+    Settings settings = mock(Settings.class);
+    when(settings.hasKey("visualStudioTestResultsFile")).thenReturn(true);
+    when(settings.getString("visualStudioTestResultsFile")).thenReturn("src/test/resources/visualstudio_test_results/valid.trx");
+
+    ParsedReportCache parsedReportCache = new ParsedReportCache();
+    UnitTestResults results = new UnitTestResultsAggregator(unitTestConf, settings, parsedReportCache).aggregate(new UnitTestResults());
+    UnitTestResults cachedResults = new UnitTestResultsAggregator(unitTestConf, settings, parsedReportCache).aggregate(new UnitTestResults());
+
+    assertThat(parsedReportCache.size()).isEqualTo(1);
+    assertThat(results.tests()).isGreaterThan(0);
+    assertThat(cachedResults.tests()).isEqualTo(results.tests());
+    assertThat(cachedResults.passedPercentage()).isEqualTo(results.passedPercentage());
+    assertThat(cachedResults.skipped()).isEqualTo(results.skipped());
+    assertThat(cachedResults.failed()).isEqualTo(results.failed());
+    assertThat(cachedResults.errors()).isEqualTo(results.errors());
+  }
+
+  @Test
+  public void aggregate_in_parallel() {
+    UnitTestConfiguration unitTestConf = new UnitTestConfiguration("visualStudioTestResultsFile");
+    Settings settings = mock(Settings.class);
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    when(settings.hasKey("visualStudioTestResultsFile")).thenReturn(true);
+    when(settings.getString("visualStudioTestResultsFile")).thenReturn(
+      "src/test/resources/visualstudio_test_results/valid.trx,src/test/resources/visualstudio_test_results/full.trx");
+
+    UnitTestResults results = new UnitTestResultsAggregator(unitTestConf, settings).aggregate(new UnitTestResults());
+
+    assertThat(results.tests()).isEqualTo(84);
+    assertThat(results.passedPercentage()).isEqualTo(38 * 100.0 / 84);
+    assertThat(results.skipped()).isEqualTo(36);
+    assertThat(results.failed()).isEqualTo(14);
+    assertThat(results.errors()).isEqualTo(6);
+    assertThat(results.executionTime()).isEqualTo(1512);
+  }
+
+  @Test
+  public void aggregate_summary_only() {
+    UnitTestConfiguration unitTestConf = new UnitTestConfiguration("visualStudioTestResultsFile");
+    Settings settings = new Settings();
+    settings.setProperty("visualStudioTestResultsFile", "src/test/resources/visualstudio_test_results/full.trx");
+
+    assertThat(new UnitTestResultsAggregator(unitTestConf, settings).aggregate(new UnitTestResults()).hasExecutionTime()).isTrue();
+
+    settings.setProperty(VisualStudioTestResultsFileParser.SUMMARY_ONLY_PROPERTY_KEY, true);
+    UnitTestResults results = new UnitTestResultsAggregator(unitTestConf, settings).aggregate(new UnitTestResults());
+    assertThat(results.tests()).isEqualTo(42);
+    assertThat(results.hasExecutionTime()).isFalse();
+  }
+
+  @Test
+  public void aggregate_in_parallel_reports_the_faulty_report() {
+    UnitTestConfiguration unitTestConf = new UnitTestConfiguration("visualStudioTestResultsFile");
+    Settings settings = mock(Settings.class);
+    when(settings.getInt(ParallelParsing.THREADS_PROPERTY_KEY)).thenReturn(4);
+    when(settings.hasKey("visualStudioTestResultsFile")).thenReturn(true);
+    when(settings.getString("visualStudioTestResultsFile")).thenReturn(
+      "src/test/resources/visualstudio_test_results/valid.trx,src/test/resources/visualstudio_test_results/wrong_passed_number.trx");
+
+    thrown.expect(ParseErrorException.class);
+    thrown.expectMessage("wrong_passed_number.trx");
+    new UnitTestResultsAggregator(unitTestConf, settings).aggregate(new UnitTestResults());
+  }
+
 }
@@ -20,6 +20,7 @@
 package org.sonar.plugins.dotnet.tests;
 
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
@@ -65,6 +66,20 @@ public class UnitTestResultsImportSensorTest {
     verify(context).saveMeasure(CoreMetrics.SKIPPED_TESTS, 1.0);
     verify(context).saveMeasure(CoreMetrics.TEST_FAILURES, 2.0);
     verify(context).saveMeasure(CoreMetrics.TEST_ERRORS, 3.0);
+    verify(context, Mockito.never()).saveMeasure(Mockito.eq(CoreMetrics.TEST_EXECUTION_TIME), Mockito.anyDouble());
+  }
+
+  @Test
+  public void analyze_execution_time() {
+    UnitTestResults results = new UnitTestResults();
+    results.add(2, 2, 0, 0, 0);
+    results.addExecutionTime(1500);
+    SensorContext context = mock(SensorContext.class);
+
+    new UnitTestResultsImportSensor(mock(UnitTestResultsAggregator.class)).analyze(context, results);
+
+    verify(context).saveMeasure(CoreMetrics.TESTS, 2.0);
+    verify(context).saveMeasure(CoreMetrics.TEST_EXECUTION_TIME, 1500.0);
   }
 
 }
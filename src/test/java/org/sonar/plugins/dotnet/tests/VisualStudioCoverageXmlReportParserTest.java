@@ -23,11 +23,14 @@ import org.fest.assertions.MapAssert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
 
 import java.io.File;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class VisualStudioCoverageXmlReportParserTest {
 
@@ -87,4 +90,71 @@ public class VisualStudioCoverageXmlReportParserTest {
         MapAssert.entry(34, 0));
   }
 
+  @Test
+  public void filtered() throws Exception {
+    String keptFile = new File("MyLibrary\\Calc.cs").getCanonicalPath();
+    String rejectedFile = new File("CalcMultiplyTest\\MultiplyTest.cs").getCanonicalPath();
+    Coverage coverage = mock(Coverage.class);
+    when(coverage.accepts(keptFile)).thenReturn(true);
+
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/valid.coveragexml"), coverage);
+
+    verify(coverage, Mockito.atLeastOnce()).addHits(Mockito.eq(keptFile), Mockito.anyInt(), Mockito.anyInt());
+    verify(coverage).accepts(rejectedFile);
+    verify(coverage, Mockito.never()).addHits(Mockito.eq(rejectedFile), Mockito.anyInt(), Mockito.anyInt());
+  }
+
+  @Test
+  public void excluded_module() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser(new CanonicalPathCache(false), new ModuleFilter(new String[0], new String[] {"calcmultiplytest.dll"}))
+      .parse(new File("src/test/resources/visualstudio_coverage_xml/valid.coveragexml"), coverage);
+
+    assertThat(coverage.files()).containsOnly(new File("MyLibrary\\Calc.cs").getCanonicalPath());
+    assertThat(coverage.hits(new File("MyLibrary\\Calc.cs").getCanonicalPath())).hasSize(16);
+  }
+
+  @Test
+  public void negative_start_line() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/negative_start_line.coveragexml"), coverage);
+
+    assertThat(coverage.hits(new File("MyLibrary\\Calc.cs").getCanonicalPath()))
+      .hasSize(1)
+      .includes(MapAssert.entry(12, 1));
+    assertThat(coverage.hits(new File("MyLibrary\\Helper.cs").getCanonicalPath()))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(-7, 1),
+        MapAssert.entry(5, 0));
+  }
+
+  @Test
+  public void duplicated_ranges() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/duplicated_ranges.coveragexml"), coverage);
+
+    assertThat(coverage.hits(new File("MyLibrary\\Calc.cs").getCanonicalPath()))
+      .hasSize(1)
+      .includes(MapAssert.entry(12, 1));
+    assertThat(coverage.hits(new File("MyLibrary\\Helper.cs").getCanonicalPath()))
+      .hasSize(2)
+      .includes(
+        MapAssert.entry(5, 0),
+        MapAssert.entry(7, 1));
+  }
+
+  @Test
+  public void huge_start_line() throws Exception {
+    Coverage coverage = new Coverage();
+    new VisualStudioCoverageXmlReportParser().parse(new File("src/test/resources/visualstudio_coverage_xml/huge_start_line.coveragexml"), coverage);
+
+    assertThat(coverage.hits(new File("MyLibrary\\Calc.cs").getCanonicalPath()))
+      .hasSize(3)
+      .includes(
+        MapAssert.entry(12, 1),
+        MapAssert.entry(2000000000, 1),
+        MapAssert.entry(Integer.MAX_VALUE, 0));
+  }
+
 }
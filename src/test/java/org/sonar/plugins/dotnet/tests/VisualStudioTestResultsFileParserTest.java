@@ -19,9 +19,13 @@
  */
 package org.sonar.plugins.dotnet.tests;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 
@@ -33,6 +37,9 @@ public class VisualStudioTestResultsFileParserTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void no_counters() {
     thrown.expect(IllegalArgumentException.class);
@@ -61,4 +68,107 @@ public class VisualStudioTestResultsFileParserTest {
     assertThat(results.errors()).isEqualTo(3);
   }
 
+  @Test
+  public void full() throws Exception {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/full.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(42);
+    assertThat(results.passedPercentage()).isEqualTo(19 * 100.0 / 42);
+    assertThat(results.skipped()).isEqualTo(18);
+    assertThat(results.failed()).isEqualTo(7);
+    assertThat(results.errors()).isEqualTo(3);
+    assertThat(results.hasExecutionTime()).isTrue();
+    assertThat(results.executionTime()).isEqualTo(1512);
+  }
+
+  @Test
+  public void summary_only() throws Exception {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser(false).parse(new File("src/test/resources/visualstudio_test_results/full.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(42);
+    assertThat(results.errors()).isEqualTo(3);
+    assertThat(results.hasExecutionTime()).isFalse();
+  }
+
+  @Test
+  public void wrong_duration() {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/wrong_duration.trx"), results);
+
+    // Only the unsupported duration is ignored
+    assertThat(results.tests()).isEqualTo(3);
+    assertThat(results.passedPercentage()).isEqualTo(100.0);
+    assertThat(results.hasExecutionTime()).isTrue();
+    assertThat(results.executionTime()).isEqualTo(1500);
+  }
+
+  @Test
+  public void no_durations() {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/no_durations.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(3);
+    assertThat(results.hasExecutionTime()).isFalse();
+  }
+
+  @Test
+  public void duration_ticks() {
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:00")).isEqualTo(0);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:00.0123456")).isEqualTo(123456);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:01.5")).isEqualTo(15000000);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("01:02:03")).isEqualTo((3600 + 120 + 3) * 10000000L);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("2.00:00:00")).isEqualTo(2 * 24 * 3600 * 10000000L);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("1.02:03:04.5")).isEqualTo(((24 + 2) * 3600 + 3 * 60 + 4) * 10000000L + 5000000);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:00.123456789")).isEqualTo(1234567);
+
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:00.")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:00.1234567x")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:00:01,5")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks(".00:00:01")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("-00:00:01")).isEqualTo(-1);
+    assertThat(VisualStudioTestResultsFileParser.durationTicks("00:foo:01")).isEqualTo(-1);
+  }
+
+  @Test
+  public void result_summary_region() throws Exception {
+    byte[] region = VisualStudioTestResultsFileParser.ResultSummaryRegion.find(new File("src/test/resources/visualstudio_test_results/full.trx"));
+    assertThat(new String(region, Charsets.UTF_8)).startsWith("<ResultSummary outcome=\"Failed\">").endsWith("</ResultSummary>");
+
+    assertThat(VisualStudioTestResultsFileParser.ResultSummaryRegion.find(new File("src/test/resources/visualstudio_test_results/summary_first.trx"))).isNull();
+  }
+
+  @Test
+  public void summary_first() throws Exception {
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser().parse(new File("src/test/resources/visualstudio_test_results/summary_first.trx"), results);
+
+    assertThat(results.tests()).isEqualTo(42);
+    assertThat(results.errors()).isEqualTo(3);
+  }
+
+  @Test
+  public void result_summary_after_large_output() throws Exception {
+    File file = tmp.newFile("large.trx");
+    Files.write(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<TestRun>\n<Results><UnitTestResult><Output><StdOut>"
+        + Strings.repeat("Some output\n", VisualStudioTestResultsFileParser.ResultSummaryRegion.TAIL_SIZE / 4)
+        + "</StdOut></Output></UnitTestResult></Results>\n"
+        + "<ResultSummary outcome=\"Completed\">\n"
+        + "<Counters total=\"3\" passed=\"1\" failed=\"1\" error=\"0\" timeout=\"0\" aborted=\"0\" inconclusive=\"1\" />\n"
+        + "</ResultSummary>\n</TestRun>\n",
+      file, Charsets.UTF_8);
+
+    assertThat(VisualStudioTestResultsFileParser.ResultSummaryRegion.find(file)).isNotNull();
+
+    UnitTestResults results = new UnitTestResults();
+    new VisualStudioTestResultsFileParser(false).parse(file, results);
+    assertThat(results.tests()).isEqualTo(3);
+    assertThat(results.skipped()).isEqualTo(1);
+    assertThat(results.failed()).isEqualTo(1);
+  }
+
 }
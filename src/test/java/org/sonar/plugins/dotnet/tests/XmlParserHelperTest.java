@@ -0,0 +1,157 @@
+/*
+ * SonarQube .NET Tests Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.tests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class XmlParserHelperTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void tags() {
+    XmlParserHelper.Tags tags = XmlParserHelper.tags("module", "range", "source_file");
+
+    assertThat(tags.indexOf("module")).isEqualTo(0);
+    assertThat(tags.indexOf("range")).isEqualTo(1);
+    assertThat(tags.indexOf("source_file")).isEqualTo(2);
+    assertThat(tags.indexOf(new String("range"))).isEqualTo(1);
+
+    assertThat(tags.indexOf("modules")).isEqualTo(XmlParserHelper.Tags.UNKNOWN);
+    assertThat(tags.indexOf("")).isEqualTo(XmlParserHelper.Tags.UNKNOWN);
+  }
+
+  @Test
+  public void tags_with_same_hash_code() {
+    // "Aa" and "BB" have the same hash code, so that no table can tell them apart
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("[Aa, BB]");
+    XmlParserHelper.tags("Aa", "BB");
+  }
+
+  @Test
+  public void attributes() {
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    try {
+      xmlParserHelper.checkRootTag("root");
+      XmlParserHelper.Attributes attributes = xmlParserHelper.attributes("id", "name");
+
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("element");
+      attributes.read();
+      assertThat(attributes.getRequiredInt("id")).isEqualTo(1);
+      assertThat(attributes.getRequired("name")).isEqualTo("first");
+      assertThat(xmlParserHelper.getRequiredIntAttribute("id")).isEqualTo(1);
+
+      // Nothing is carried over from the previous element
+      assertThat(xmlParserHelper.nextTag()).isEqualTo("element");
+      attributes.read();
+      assertThat(attributes.get("id")).isNull();
+      assertThat(attributes.get("name")).isEqualTo("second");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void missing_attribute() {
+    XmlParserHelper xmlParserHelper = parserOnElement(2);
+    try {
+      XmlParserHelper.Attributes attributes = xmlParserHelper.attributes("id", "name").read();
+
+      thrown.expect(ParseErrorException.class);
+      thrown.expectMessage("Missing attribute \"id\" in element <element>");
+      thrown.expectMessage("attributes.xml at line 4");
+      attributes.getRequiredInt("id");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void missing_single_attribute() {
+    XmlParserHelper xmlParserHelper = parserOnElement(2);
+    try {
+      thrown.expect(ParseErrorException.class);
+      thrown.expectMessage("Missing attribute \"id\" in element <element>");
+      xmlParserHelper.getRequiredIntAttribute("id");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void not_an_integer() {
+    XmlParserHelper xmlParserHelper = parserOnElement(3);
+    try {
+      XmlParserHelper.Attributes attributes = xmlParserHelper.attributes("id", "name").read();
+      assertThat(attributes.getRequired("id")).isEqualTo("one");
+
+      thrown.expect(ParseErrorException.class);
+      thrown.expectMessage("Expected an integer instead of \"one\" for the attribute \"id\"");
+      thrown.expectMessage("attributes.xml at line 5");
+      attributes.getRequiredInt("id");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void single_attribute_not_an_integer() {
+    XmlParserHelper xmlParserHelper = parserOnElement(3);
+    try {
+      thrown.expect(ParseErrorException.class);
+      thrown.expectMessage("Expected an integer instead of \"one\" for the attribute \"id\"");
+      xmlParserHelper.getRequiredIntAttribute("id");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  @Test
+  public void attribute_not_requested() {
+    XmlParserHelper xmlParserHelper = parserOnElement(1);
+    try {
+      XmlParserHelper.Attributes attributes = xmlParserHelper.attributes("id").read();
+
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("The attribute \"name\" was not requested");
+      attributes.get("name");
+    } finally {
+      xmlParserHelper.close();
+    }
+  }
+
+  private static XmlParserHelper parserOnElement(int position) {
+    XmlParserHelper xmlParserHelper = new XmlParserHelper(new File("src/test/resources/xml_parser_helper/attributes.xml"));
+    xmlParserHelper.checkRootTag("root");
+    for (int i = 0; i < position; i++) {
+      xmlParserHelper.nextTag();
+    }
+    return xmlParserHelper;
+  }
+
+}